@@ -0,0 +1,172 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of {@code double} values, stored in a {@code double[]} so that adding or reading
+ * a value never boxes it.  The generated parsers bind json arrays directly into this type when a
+ * field is declared as {@code DoubleList}.
+ * <p/>
+ * Like the java collections, this is not thread-safe.
+ */
+public final class DoubleList {
+  private static final int DEFAULT_CAPACITY = 10;
+  private static final double[] EMPTY = new double[0];
+
+  private double[] mValues;
+  private int mSize;
+
+  public DoubleList() {
+    mValues = EMPTY;
+  }
+
+  public DoubleList(int initialCapacity) {
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("negative capacity: " + initialCapacity);
+    }
+    mValues = initialCapacity == 0 ? EMPTY : new double[initialCapacity];
+  }
+
+  /**
+   * Returns a list that holds a copy of {@code values}.
+   */
+  public static DoubleList of(double... values) {
+    DoubleList list = new DoubleList(values.length);
+    System.arraycopy(values, 0, list.mValues, 0, values.length);
+    list.mSize = values.length;
+    return list;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  public double get(int index) {
+    checkIndex(index);
+    return mValues[index];
+  }
+
+  /**
+   * Replaces the value at {@code index}, and returns the value that was there before.
+   */
+  public double set(int index, double value) {
+    checkIndex(index);
+    double previous = mValues[index];
+    mValues[index] = value;
+    return previous;
+  }
+
+  public void add(double value) {
+    if (mSize == mValues.length) {
+      grow(mSize + 1);
+    }
+    mValues[mSize++] = value;
+  }
+
+  public void add(int index, double value) {
+    if (index < 0 || index > mSize) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+    }
+    if (mSize == mValues.length) {
+      grow(mSize + 1);
+    }
+    System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+    mValues[index] = value;
+    mSize++;
+  }
+
+  /**
+   * Removes the value at {@code index}, and returns it.
+   */
+  public double removeAt(int index) {
+    checkIndex(index);
+    double removed = mValues[index];
+    System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+    mSize--;
+    return removed;
+  }
+
+  /**
+   * Removes all the values.  The backing array is kept, so the list can be refilled without
+   * allocating.
+   */
+  public void clear() {
+    mSize = 0;
+  }
+
+  public void ensureCapacity(int minCapacity) {
+    if (minCapacity > mValues.length) {
+      grow(minCapacity);
+    }
+  }
+
+  /**
+   * Returns a copy of the values in this list.
+   */
+  public double[] toArray() {
+    return Arrays.copyOf(mValues, mSize);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof DoubleList)) {
+      return false;
+    }
+    DoubleList other = (DoubleList) o;
+    if (mSize != other.mSize) {
+      return false;
+    }
+    for (int ix = 0; ix < mSize; ix++) {
+      if (Double.doubleToLongBits(mValues[ix]) != Double.doubleToLongBits(other.mValues[ix])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    for (int ix = 0; ix < mSize; ix++) {
+      long bits = Double.doubleToLongBits(mValues[ix]);
+      result = 31 * result + (int) (bits ^ (bits >>> 32));
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append('[');
+    for (int ix = 0; ix < mSize; ix++) {
+      if (ix > 0) {
+        sb.append(", ");
+      }
+      sb.append(mValues[ix]);
+    }
+    return sb.append(']').toString();
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= mSize) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+    }
+  }
+
+  private void grow(int minCapacity) {
+    int newCapacity = Math.max(mValues.length + (mValues.length >> 1), DEFAULT_CAPACITY);
+    if (newCapacity < minCapacity) {
+      newCapacity = minCapacity;
+    }
+    mValues = Arrays.copyOf(mValues, newCapacity);
+  }
+}
@@ -0,0 +1,162 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Selects the fields of a {@link com.instagram.common.json.annotation.JsonType} class that
+ * {@code parseFromJson(JsonParser, FieldMask)} binds.  The other fields are skipped without being
+ * parsed.  A mask may hold a nested mask for a field whose values are sub-objects, which selects
+ * the fields of the sub-objects in the same way.
+ * <p/>
+ * A mask is built once, with the builder returned by the generated helper's
+ * {@code fieldMaskBuilder()}, and can then be shared freely:
+ * <pre>
+ *   FieldMask userMask = User__JsonHelper.fieldMaskBuilder()
+ *       .include("username")
+ *       .build();
+ *   FieldMask itemMask = Item__JsonHelper.fieldMaskBuilder()
+ *       .include("id")
+ *       .include("user", userMask)
+ *       .build();
+ * </pre>
+ * A mask can only be used with the helper that built it.
+ * <p/>
+ * Each selected field is also given a slot, a number below {@link #size()} that is unique across
+ * the class and its superclasses.  The generated parsers use the slots to tell when every selected
+ * field has been bound, so that they can skip the rest of the object.
+ */
+public final class FieldMask {
+  private final SerializedString[] mFieldNames;
+  private final long[] mIncluded;
+  private final int[] mSlots;
+  private final FieldMask[] mChildren;
+  private final FieldMask mParent;
+  private final int mSize;
+
+  private FieldMask(
+      SerializedString[] fieldNames,
+      long[] included,
+      int[] slots,
+      FieldMask[] children,
+      FieldMask parent,
+      int size) {
+    mFieldNames = fieldNames;
+    mIncluded = included;
+    mSlots = slots;
+    mChildren = children;
+    mParent = parent;
+    mSize = size;
+  }
+
+  /**
+   * Returns true if the field with index {@code fieldIndex} in the helper that built this mask is
+   * selected.
+   */
+  public boolean includes(int fieldIndex) {
+    return (mIncluded[fieldIndex >>> 6] & (1L << fieldIndex)) != 0;
+  }
+
+  /**
+   * Returns the slot of the field with index {@code fieldIndex}, or -1 if it is not selected.
+   * The fields declared by superclasses have the lower slots.
+   */
+  public int getSlot(int fieldIndex) {
+    return mSlots[fieldIndex];
+  }
+
+  /**
+   * Returns the mask for the sub-objects of the field with index {@code fieldIndex}, or null if
+   * all their fields are selected.
+   */
+  public FieldMask getChild(int fieldIndex) {
+    return mChildren[fieldIndex];
+  }
+
+  /**
+   * Returns the mask for the fields declared by the superclass, or null if the class has no
+   * superclass with json fields.
+   */
+  public FieldMask getParent() {
+    return mParent;
+  }
+
+  /**
+   * Returns the number of fields selected, including the fields declared by superclasses.
+   */
+  public int size() {
+    return mSize;
+  }
+
+  /**
+   * Throws an {@link IllegalArgumentException} unless this mask was built by the helper whose
+   * field names are {@code fieldNames}.
+   */
+  public void checkOwner(SerializedString[] fieldNames) {
+    if (fieldNames != mFieldNames) {
+      throw new IllegalArgumentException("field mask was built for a different type");
+    }
+  }
+
+  /**
+   * Builds a {@link FieldMask}.  A field name that is not declared by the class is looked up in
+   * the superclass.
+   */
+  public static final class Builder {
+    private final SerializedString[] mFieldNames;
+    private final Builder mParent;
+    private final long[] mIncluded;
+    private final FieldMask[] mChildren;
+
+    /**
+     * This is called by the generated helpers.
+     *
+     * @param fieldNames the json names of the fields declared by the class, by field index.
+     * @param parent the builder for the superclass, or null.
+     */
+    public Builder(SerializedString[] fieldNames, Builder parent) {
+      mFieldNames = fieldNames;
+      mParent = parent;
+      mIncluded = new long[(fieldNames.length + 63) >>> 6];
+      mChildren = new FieldMask[fieldNames.length];
+    }
+
+    /**
+     * Selects the field named {@code fieldName}, and all the fields of its sub-objects.
+     */
+    public Builder include(String fieldName) {
+      return include(fieldName, null);
+    }
+
+    /**
+     * Selects the field named {@code fieldName}.  If {@code child} is not null, only the fields it
+     * selects are bound in the sub-objects of the field.
+     */
+    public Builder include(String fieldName, FieldMask child) {
+      for (int ix = 0; ix < mFieldNames.length; ix++) {
+        if (mFieldNames[ix].getValue().equals(fieldName)) {
+          mIncluded[ix >>> 6] |= 1L << ix;
+          mChildren[ix] = child;
+          return this;
+        }
+      }
+      if (mParent != null) {
+        mParent.include(fieldName, child);
+        return this;
+      }
+      throw new IllegalArgumentException("no field named " + fieldName);
+    }
+
+    public FieldMask build() {
+      FieldMask parent = mParent != null ? mParent.build() : null;
+      int size = parent != null ? parent.size() : 0;
+      int[] slots = new int[mFieldNames.length];
+      for (int ix = 0; ix < mFieldNames.length; ix++) {
+        slots[ix] = (mIncluded[ix >>> 6] & (1L << ix)) != 0 ? size++ : -1;
+      }
+      return new FieldMask(
+          mFieldNames, mIncluded.clone(), slots, mChildren.clone(), parent, size);
+    }
+  }
+}
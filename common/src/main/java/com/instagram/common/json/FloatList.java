@@ -0,0 +1,171 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of {@code float} values, stored in a {@code float[]} so that adding or reading
+ * a value never boxes it.  The generated parsers bind json arrays directly into this type when a
+ * field is declared as {@code FloatList}.
+ * <p/>
+ * Like the java collections, this is not thread-safe.
+ */
+public final class FloatList {
+  private static final int DEFAULT_CAPACITY = 10;
+  private static final float[] EMPTY = new float[0];
+
+  private float[] mValues;
+  private int mSize;
+
+  public FloatList() {
+    mValues = EMPTY;
+  }
+
+  public FloatList(int initialCapacity) {
+    if (initialCapacity < 0) {
+      throw new IllegalArgumentException("negative capacity: " + initialCapacity);
+    }
+    mValues = initialCapacity == 0 ? EMPTY : new float[initialCapacity];
+  }
+
+  /**
+   * Returns a list that holds a copy of {@code values}.
+   */
+  public static FloatList of(float... values) {
+    FloatList list = new FloatList(values.length);
+    System.arraycopy(values, 0, list.mValues, 0, values.length);
+    list.mSize = values.length;
+    return list;
+  }
+
+  public int size() {
+    return mSize;
+  }
+
+  public boolean isEmpty() {
+    return mSize == 0;
+  }
+
+  public float get(int index) {
+    checkIndex(index);
+    return mValues[index];
+  }
+
+  /**
+   * Replaces the value at {@code index}, and returns the value that was there before.
+   */
+  public float set(int index, float value) {
+    checkIndex(index);
+    float previous = mValues[index];
+    mValues[index] = value;
+    return previous;
+  }
+
+  public void add(float value) {
+    if (mSize == mValues.length) {
+      grow(mSize + 1);
+    }
+    mValues[mSize++] = value;
+  }
+
+  public void add(int index, float value) {
+    if (index < 0 || index > mSize) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+    }
+    if (mSize == mValues.length) {
+      grow(mSize + 1);
+    }
+    System.arraycopy(mValues, index, mValues, index + 1, mSize - index);
+    mValues[index] = value;
+    mSize++;
+  }
+
+  /**
+   * Removes the value at {@code index}, and returns it.
+   */
+  public float removeAt(int index) {
+    checkIndex(index);
+    float removed = mValues[index];
+    System.arraycopy(mValues, index + 1, mValues, index, mSize - index - 1);
+    mSize--;
+    return removed;
+  }
+
+  /**
+   * Removes all the values.  The backing array is kept, so the list can be refilled without
+   * allocating.
+   */
+  public void clear() {
+    mSize = 0;
+  }
+
+  public void ensureCapacity(int minCapacity) {
+    if (minCapacity > mValues.length) {
+      grow(minCapacity);
+    }
+  }
+
+  /**
+   * Returns a copy of the values in this list.
+   */
+  public float[] toArray() {
+    return Arrays.copyOf(mValues, mSize);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof FloatList)) {
+      return false;
+    }
+    FloatList other = (FloatList) o;
+    if (mSize != other.mSize) {
+      return false;
+    }
+    for (int ix = 0; ix < mSize; ix++) {
+      if (Float.floatToIntBits(mValues[ix]) != Float.floatToIntBits(other.mValues[ix])) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = 1;
+    for (int ix = 0; ix < mSize; ix++) {
+      result = 31 * result + Float.floatToIntBits(mValues[ix]);
+    }
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append('[');
+    for (int ix = 0; ix < mSize; ix++) {
+      if (ix > 0) {
+        sb.append(", ");
+      }
+      sb.append(mValues[ix]);
+    }
+    return sb.append(']').toString();
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= mSize) {
+      throw new IndexOutOfBoundsException("index: " + index + ", size: " + mSize);
+    }
+  }
+
+  private void grow(int minCapacity) {
+    int newCapacity = Math.max(mValues.length + (mValues.length >> 1), DEFAULT_CAPACITY);
+    if (newCapacity < minCapacity) {
+      newCapacity = minCapacity;
+    }
+    mValues = Arrays.copyOf(mValues, newCapacity);
+  }
+}
@@ -10,4 +10,17 @@ public class JsonAnnotationProcessorConstants {
    * This is the suffix used for the generated class.
    */
   public static final String HELPER_CLASS_SUFFIX = "__JsonHelper";
+
+  /**
+   * This is the processor option (passed to javac as -A&lt;option&gt;=&lt;value&gt;) that controls
+   * how the generated code maps a json field name onto a field.  By default, the generated code
+   * switches on the length and the characters of the field name.  If the option is set to
+   * {@link #FIELD_DISPATCH_CHAIN}, it compares the field name against each field in turn.
+   */
+  public static final String FIELD_DISPATCH_OPTION = "com.instagram.common.json.fieldDispatch";
+
+  /**
+   * Value for {@link #FIELD_DISPATCH_OPTION} that selects the chain of string comparisons.
+   */
+  public static final String FIELD_DISPATCH_CHAIN = "chain";
 }
@@ -0,0 +1,127 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Iterates over the objects in a json array, parsing each one only when it is asked for.  Only the
+ * element being returned is held, so an array of any length can be read in constant memory.  The
+ * generated helpers return one of these from {@code parseArrayIterator}.
+ * <p/>
+ * As with the generated list parsers, elements that are not objects are skipped, and a value that
+ * is not an array is treated as an empty array.  Since {@link Iterator} methods cannot throw
+ * {@link IOException}, an error reading the input is thrown as an {@link IterationException}
+ * wrapping it.
+ * <p/>
+ * An iterator that owns its parser closes it once the end of the array is reached, or when
+ * {@link #close()} is called.
+ */
+public final class JsonArrayIterator<T> implements Iterator<T>, Closeable {
+  private final JsonParser mParser;
+  private final JsonObjectParser<T> mObjectParser;
+  private final boolean mOwnsParser;
+  private boolean mStarted;
+  private boolean mFinished;
+  private T mNext;
+
+  /**
+   * @param jp the parser.  The array is read starting at the current token, or at the next token
+   * if the parser has no current token.
+   * @param objectParser parses each element.
+   * @param ownsParser if true, the parser is closed along with this iterator.
+   */
+  public JsonArrayIterator(JsonParser jp, JsonObjectParser<T> objectParser, boolean ownsParser) {
+    mParser = jp;
+    mObjectParser = objectParser;
+    mOwnsParser = ownsParser;
+  }
+
+  @Override
+  public boolean hasNext() {
+    if (mNext != null) {
+      return true;
+    }
+    if (mFinished) {
+      return false;
+    }
+    try {
+      if (!mStarted) {
+        mStarted = true;
+        if (mParser.getCurrentToken() == null) {
+          mParser.nextToken();
+        }
+        if (mParser.getCurrentToken() != JsonToken.START_ARRAY) {
+          mParser.skipChildren();
+          finish();
+          return false;
+        }
+      }
+      while (mNext == null) {
+        JsonToken token = mParser.nextToken();
+        if (token == JsonToken.END_ARRAY || token == null) {
+          finish();
+          return false;
+        }
+        mNext = mObjectParser.parseFromJson(mParser);
+      }
+      return true;
+    } catch (IOException ex) {
+      throw new IterationException(ex);
+    }
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    // drop our reference so the element can be collected as soon as the caller is done with it.
+    T result = mNext;
+    mNext = null;
+    return result;
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops the iteration, closing the parser if this iterator owns it.
+   */
+  @Override
+  public void close() throws IOException {
+    mNext = null;
+    finish();
+  }
+
+  private void finish() throws IOException {
+    mFinished = true;
+    if (mOwnsParser) {
+      mParser.close();
+    }
+  }
+
+  /**
+   * Thrown by {@link #hasNext()} and {@link #next()} when the input cannot be read or parsed.
+   */
+  public static final class IterationException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    IterationException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
+}
@@ -0,0 +1,748 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Reads json straight from UTF-8 bytes, for the generated {@code parseFromBytes} methods.  These
+ * bind the common field types without going through jackson's tokenizer: field names are matched
+ * on their bytes, numbers are parsed in place, and strings that are plain ascii are copied out
+ * without decoding.
+ * <p/>
+ * The reader only handles the forms that it can bind exactly as jackson would.  A value in any
+ * other form is handed to jackson on its own with {@link #createValueParser()}.  If the input is
+ * not well-formed json, or is in a form the reader does not handle at all (such as a byte order
+ * mark or an escaped field name), the reader throws {@link FallbackException}, and the caller
+ * should parse the whole input again with jackson, which also reports any error.  Objects bound
+ * before that, and postprocessed, are discarded.
+ * <p/>
+ * Strings and field names, including those that are skipped, are scanned a word at a time: eight
+ * bytes are checked for anything but plain ascii with a few arithmetic operations on a long, so
+ * only the bytes that need attention are looked at one by one.
+ * <p/>
+ * Objects and arrays are read with {@link #beginObject()} and {@link #nextField()}, or
+ * {@link #beginArray()} and {@link #nextElement()}:
+ * <pre>
+ *   if (reader.beginObject()) {
+ *     while (reader.nextField()) {
+ *       // the name is at getBytes(), getNameOffset() and getNameLength().  read or skip the value.
+ *     }
+ *   }
+ * </pre>
+ */
+public final class JsonByteReader {
+  private static final FallbackException FALLBACK = new FallbackException();
+  // plain ascii is copied into strings with this, which needs no decoding.
+  private static final Charset LATIN_1 = Charset.forName("ISO-8859-1");
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+  private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private static final int MAX_LONG_DIGITS = 18;
+  private static final int MAX_EXACT_POWER_OF_TEN = 22;
+  private static final double[] POWERS_OF_TEN = {
+      1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+      1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+  private final byte[] mBytes;
+  // reads the input eight bytes at a time.
+  private final ByteBuffer mWords;
+  private final int mEnd;
+  private int mPos;
+  // true until the first member of the innermost open object or array has been read.
+  private boolean mFirst;
+  private int mNameOffset;
+  private int mNameLength;
+  private int mValueOffset;
+  private int mValueLength;
+  private int mIntValue;
+  private long mLongValue;
+  private double mDoubleValue;
+  // these describe the number found by scanNumber().
+  private int mNumberStart;
+  private int mDigits;
+  private boolean mIntegral;
+  private int mFractionDigits;
+  private int mExponent;
+  private char[] mChars = new char[64];
+  private byte[] mSkipStack = new byte[16];
+
+  public JsonByteReader(byte[] bytes, int offset, int length) {
+    mBytes = bytes;
+    mWords = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    mPos = offset;
+    mEnd = offset + length;
+  }
+
+  /**
+   * Returns the exception that tells the caller to parse the input with jackson instead.
+   */
+  public static FallbackException fallback() {
+    return FALLBACK;
+  }
+
+  public byte[] getBytes() {
+    return mBytes;
+  }
+
+  /**
+   * Returns the offset in {@link #getBytes()} of the name of the field read by
+   * {@link #nextField()}.
+   */
+  public int getNameOffset() {
+    return mNameOffset;
+  }
+
+  /**
+   * Returns the length in bytes of the name of the field read by {@link #nextField()}.
+   */
+  public int getNameLength() {
+    return mNameLength;
+  }
+
+  /**
+   * Returns the offset in {@link #getBytes()} of the object skipped by {@link #skipObject()}, or
+   * of the characters of the string read by {@link #nextAsciiString()}.
+   */
+  public int getValueOffset() {
+    return mValueOffset;
+  }
+
+  /**
+   * Returns the length in bytes of the object skipped by {@link #skipObject()}, or of the
+   * characters of the string read by {@link #nextAsciiString()}.
+   */
+  public int getValueLength() {
+    return mValueLength;
+  }
+
+  public int getIntValue() {
+    return mIntValue;
+  }
+
+  public long getLongValue() {
+    return mLongValue;
+  }
+
+  public double getDoubleValue() {
+    return mDoubleValue;
+  }
+
+  /**
+   * If the next value is an object, reads its start and returns true.  Otherwise, skips the value
+   * and returns false.
+   */
+  public boolean beginObject() {
+    if (peek() != '{') {
+      skipValue();
+      return false;
+    }
+    mPos++;
+    mFirst = true;
+    return true;
+  }
+
+  /**
+   * Reads the name of the next field of the current object, up to the start of its value, and
+   * returns true.  Returns false once the end of the object has been read.
+   */
+  public boolean nextField() {
+    byte b = peek();
+    if (b == '}') {
+      mPos++;
+      mFirst = false;
+      return false;
+    }
+    if (!mFirst) {
+      if (b != ',') {
+        throw FALLBACK;
+      }
+      mPos++;
+      b = peek();
+    }
+    mFirst = false;
+    if (b != '"') {
+      throw FALLBACK;
+    }
+    int start = ++mPos;
+    mPos = scanPlain(mPos);
+    while (true) {
+      if (mPos >= mEnd) {
+        throw FALLBACK;
+      }
+      b = mBytes[mPos];
+      if (b == '"') {
+        break;
+      }
+      if (b == '\\' || (b >= 0 && b < ' ')) {
+        // escaped names are matched by jackson.
+        throw FALLBACK;
+      }
+      mPos++;
+    }
+    mNameOffset = start;
+    mNameLength = mPos - start;
+    mPos++;
+    if (peek() != ':') {
+      throw FALLBACK;
+    }
+    mPos++;
+    peek();
+    return true;
+  }
+
+  /**
+   * If the next value is an array, reads its start and returns true.  Otherwise, reads nothing
+   * and returns false.
+   */
+  public boolean beginArray() {
+    if (peek() != '[') {
+      return false;
+    }
+    mPos++;
+    mFirst = true;
+    return true;
+  }
+
+  /**
+   * Reads up to the start of the next element of the current array, and returns true.  Returns
+   * false once the end of the array has been read.
+   */
+  public boolean nextElement() {
+    byte b = peek();
+    if (b == ']') {
+      mPos++;
+      mFirst = false;
+      return false;
+    }
+    if (!mFirst) {
+      if (b != ',') {
+        throw FALLBACK;
+      }
+      mPos++;
+      peek();
+    }
+    mFirst = false;
+    return true;
+  }
+
+  /**
+   * If the next value is an integer that fits in an int, reads it into {@link #getIntValue()} and
+   * returns true.  Otherwise, reads nothing and returns false.
+   */
+  public boolean nextInt() {
+    if (!nextLong()) {
+      return false;
+    }
+    if (mLongValue < Integer.MIN_VALUE || mLongValue > Integer.MAX_VALUE) {
+      mPos = mNumberStart;
+      return false;
+    }
+    mIntValue = (int) mLongValue;
+    return true;
+  }
+
+  /**
+   * If the next value is an integer of at most 18 digits, reads it into {@link #getLongValue()}
+   * and returns true.  Otherwise, reads nothing and returns false.
+   */
+  public boolean nextLong() {
+    int end = scanNumber();
+    if (end < 0 || !mIntegral || mDigits > MAX_LONG_DIGITS) {
+      return false;
+    }
+    mLongValue = parseDigits(mNumberStart, end);
+    mPos = end;
+    return true;
+  }
+
+  /**
+   * If the next value is a number, reads it into {@link #getDoubleValue()} and returns true.
+   * Otherwise, reads nothing and returns false.
+   */
+  public boolean nextDouble() {
+    int end = scanNumber();
+    if (end < 0) {
+      return false;
+    }
+    if (mIntegral && mDigits <= MAX_LONG_DIGITS) {
+      // jackson reads these as longs, so "-0" is 0.0.
+      mDoubleValue = parseDigits(mNumberStart, end);
+    } else if (!parseExactDouble(end)) {
+      int length = end - mNumberStart;
+      char[] chars = charBuffer(length);
+      for (int ix = 0; ix < length; ix++) {
+        chars[ix] = (char) mBytes[mNumberStart + ix];
+      }
+      mDoubleValue = Double.parseDouble(new String(chars, 0, length));
+    }
+    mPos = end;
+    return true;
+  }
+
+  /**
+   * If the next value is true or false, reads it and returns its value.  Otherwise, reads nothing
+   * and returns null.
+   */
+  public Boolean readBoolean() {
+    byte b = peek();
+    if (b == 't' && matchLiteral(TRUE)) {
+      return Boolean.TRUE;
+    }
+    if (b == 'f' && matchLiteral(FALSE)) {
+      return Boolean.FALSE;
+    }
+    return null;
+  }
+
+  /**
+   * If the next value is null, reads it and returns true.  Otherwise, reads nothing and returns
+   * false.
+   */
+  public boolean readNull() {
+    return peek() == 'n' && matchLiteral(NULL);
+  }
+
+  /**
+   * If the next value is a string, reads it and returns it.  Otherwise, or if the string holds
+   * anything that jackson might read differently, reads nothing and returns null.
+   */
+  public String readString() {
+    if (peek() != '"') {
+      return null;
+    }
+    int start = mPos + 1;
+    // the fast path, for strings that are plain ascii.
+    for (int pos = scanPlain(start); pos < mEnd; pos++) {
+      byte b = mBytes[pos];
+      if (b == '"') {
+        mPos = pos + 1;
+        return new String(mBytes, start, pos - start, LATIN_1);
+      }
+      if (b == '\\' || b < ' ') {
+        // escapes, control characters and non-ascii bytes, which are negative.
+        break;
+      }
+    }
+    int length = decodeString(true);
+    return length >= 0 ? new String(mChars, 0, length) : null;
+  }
+
+  /**
+   * If the next value is a string of printable ascii without escapes, reads it without copying it
+   * and returns true.  Its characters are then at {@link #getValueOffset()} and
+   * {@link #getValueLength()}.  Otherwise, reads nothing and returns false.
+   */
+  public boolean nextAsciiString() {
+    if (peek() != '"') {
+      return false;
+    }
+    int start = mPos + 1;
+    for (int pos = scanPlain(start); pos < mEnd; pos++) {
+      byte b = mBytes[pos];
+      if (b == '"') {
+        mValueOffset = start;
+        mValueLength = pos - start;
+        mPos = pos + 1;
+        return true;
+      }
+      if (b == '\\' || b < ' ') {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Skips the next value, including everything nested in it.
+   */
+  public void skipValue() {
+    int depth = 0;
+    while (true) {
+      byte b = peek();
+      if (b == '{' || b == '[') {
+        mPos++;
+        mFirst = true;
+        if (depth == mSkipStack.length) {
+          byte[] stack = new byte[depth * 2];
+          System.arraycopy(mSkipStack, 0, stack, 0, depth);
+          mSkipStack = stack;
+        }
+        mSkipStack[depth++] = b;
+      } else {
+        skipScalar(b);
+      }
+
+      // close the containers that end here, until another value follows.
+      while (true) {
+        if (depth == 0) {
+          return;
+        }
+        if (mSkipStack[depth - 1] == '{' ? nextField() : nextElement()) {
+          break;
+        }
+        depth--;
+      }
+    }
+  }
+
+  /**
+   * Skips the next value, including everything nested in it, and returns true if it is an object.
+   * The object is then at {@link #getValueOffset()} and {@link #getValueLength()}.
+   */
+  public boolean skipObject() {
+    boolean isObject = peek() == '{';
+    int start = mPos;
+    skipValue();
+    mValueOffset = start;
+    mValueLength = mPos - start;
+    return isObject;
+  }
+
+  /**
+   * Returns a jackson parser over the next value alone, positioned on its first token, and skips
+   * the value in this reader.  The caller must close the parser.
+   */
+  public JsonParser createValueParser() throws IOException {
+    int start = mPos;
+    skipValue();
+    JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(mBytes, start, mPos - start);
+    jp.nextToken();
+    return jp;
+  }
+
+  private void skipScalar(byte b) {
+    boolean valid;
+    switch (b) {
+      case '"':
+        valid = skipString();
+        break;
+      case 't':
+        valid = matchLiteral(TRUE);
+        break;
+      case 'f':
+        valid = matchLiteral(FALSE);
+        break;
+      case 'n':
+        valid = matchLiteral(NULL);
+        break;
+      default:
+        int end = scanNumber();
+        valid = end >= 0;
+        mPos = valid ? end : mPos;
+        break;
+    }
+    if (!valid) {
+      throw FALLBACK;
+    }
+  }
+
+  /**
+   * Reads the string starting at the current position without decoding it.  Returns false and
+   * reads nothing if it is malformed.
+   */
+  private boolean skipString() {
+    // most strings are plain ascii, which only needs to be scanned for the closing quote.
+    for (int pos = scanPlain(mPos + 1); pos < mEnd; pos++) {
+      byte b = mBytes[pos];
+      if (b == '"') {
+        mPos = pos + 1;
+        return true;
+      }
+      if (b == '\\' || b < ' ') {
+        break;
+      }
+    }
+    return decodeString(false) >= 0;
+  }
+
+  /**
+   * Skips whitespace and returns the next byte, without reading it.
+   */
+  private byte peek() {
+    while (mPos < mEnd) {
+      byte b = mBytes[mPos];
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        return b;
+      }
+      mPos++;
+    }
+    throw FALLBACK;
+  }
+
+  private boolean matchLiteral(byte[] literal) {
+    int length = literal.length;
+    if (mEnd - mPos < length) {
+      return false;
+    }
+    for (int ix = 0; ix < length; ix++) {
+      if (mBytes[mPos + ix] != literal[ix]) {
+        return false;
+      }
+    }
+    mPos += length;
+    return true;
+  }
+
+  /**
+   * Checks that a json number starts at the current position, without reading it.  Returns where
+   * it ends, or -1 if there is no valid number.  The number is described by {@link #mDigits},
+   * {@link #mIntegral}, {@link #mFractionDigits} and {@link #mExponent}.
+   */
+  private int scanNumber() {
+    peek();
+    mNumberStart = mPos;
+    int pos = mPos;
+    if (pos < mEnd && mBytes[pos] == '-') {
+      pos++;
+    }
+    int digitsStart = pos;
+    if (pos < mEnd && mBytes[pos] == '0') {
+      pos++;
+    } else {
+      while (pos < mEnd && mBytes[pos] >= '0' && mBytes[pos] <= '9') {
+        pos++;
+      }
+    }
+    if (pos == digitsStart) {
+      return -1;
+    }
+    mDigits = pos - digitsStart;
+    mIntegral = true;
+    mFractionDigits = 0;
+    mExponent = 0;
+    if (pos < mEnd && mBytes[pos] == '.') {
+      int fractionStart = ++pos;
+      while (pos < mEnd && mBytes[pos] >= '0' && mBytes[pos] <= '9') {
+        pos++;
+      }
+      if (pos == fractionStart) {
+        return -1;
+      }
+      mIntegral = false;
+      mFractionDigits = pos - fractionStart;
+    }
+    if (pos < mEnd && (mBytes[pos] == 'e' || mBytes[pos] == 'E')) {
+      pos++;
+      boolean negative = false;
+      if (pos < mEnd && (mBytes[pos] == '+' || mBytes[pos] == '-')) {
+        negative = mBytes[pos] == '-';
+        pos++;
+      }
+      int exponentStart = pos;
+      int exponent = 0;
+      while (pos < mEnd && mBytes[pos] >= '0' && mBytes[pos] <= '9') {
+        // large exponents only need to be told apart from small ones.
+        exponent = Math.min(exponent * 10 + (mBytes[pos] - '0'), 100000);
+        pos++;
+      }
+      if (pos == exponentStart) {
+        return -1;
+      }
+      mIntegral = false;
+      mExponent = negative ? -exponent : exponent;
+    }
+    return pos;
+  }
+
+  /**
+   * Returns the value of the digits between {@code start} and {@code end}, skipping a decimal
+   * point, and negated if they follow a minus sign.  There must be at most 18 digits.
+   */
+  private long parseDigits(int start, int end) {
+    boolean negative = mBytes[start] == '-';
+    long value = 0;
+    for (int pos = negative ? start + 1 : start; pos < end; pos++) {
+      byte b = mBytes[pos];
+      if (b >= '0' && b <= '9') {
+        value = value * 10 + (b - '0');
+      } else if (b != '.') {
+        break;
+      }
+    }
+    return negative ? -value : value;
+  }
+
+  /**
+   * Reads a number whose digits and power of ten are both exactly representable as doubles, in
+   * which case a single multiplication or division is correctly rounded.  Returns false for any
+   * other number.
+   */
+  private boolean parseExactDouble(int end) {
+    int digits = mDigits + mFractionDigits;
+    int exponent = mExponent - mFractionDigits;
+    if (digits > MAX_LONG_DIGITS ||
+        exponent < -MAX_EXACT_POWER_OF_TEN || exponent > MAX_EXACT_POWER_OF_TEN) {
+      return false;
+    }
+    long mantissa = parseDigits(mNumberStart, end);
+    if (Math.abs(mantissa) > (1L << 53)) {
+      return false;
+    }
+    double value = mantissa;
+    if (mantissa == 0 && mBytes[mNumberStart] == '-') {
+      value = -0.0;
+    }
+    mDoubleValue = exponent >= 0 ?
+        value * POWERS_OF_TEN[exponent] :
+        value / POWERS_OF_TEN[-exponent];
+    return true;
+  }
+
+  /**
+   * Checks the string starting at the current position, decoding it into {@link #mChars} if
+   * {@code decode} is true.  Returns the number of characters and reads the string, or returns -1
+   * and reads nothing if the string is malformed or holds anything that jackson might read
+   * differently.
+   */
+  private int decodeString(boolean decode) {
+    int pos = mPos + 1;
+    int length = 0;
+    while (pos < mEnd) {
+      int b = mBytes[pos++];
+      int c;
+      if (b == '"') {
+        mPos = pos;
+        return length;
+      } else if (b == '\\') {
+        if (pos >= mEnd) {
+          return -1;
+        }
+        switch (mBytes[pos++]) {
+          case '"': c = '"'; break;
+          case '\\': c = '\\'; break;
+          case '/': c = '/'; break;
+          case 'b': c = '\b'; break;
+          case 'f': c = '\f'; break;
+          case 'n': c = '\n'; break;
+          case 'r': c = '\r'; break;
+          case 't': c = '\t'; break;
+          case 'u':
+            if (mEnd - pos < 4) {
+              return -1;
+            }
+            c = 0;
+            for (int ix = 0; ix < 4; ix++) {
+              int digit = Character.digit(mBytes[pos++], 16);
+              if (digit < 0) {
+                return -1;
+              }
+              c = (c << 4) | digit;
+            }
+            break;
+          default:
+            return -1;
+        }
+      } else if (b >= ' ') {
+        c = b;
+      } else if (b >= 0) {
+        // unescaped control characters are not allowed.
+        return -1;
+      } else if ((b & 0xe0) == 0xc0 && (b & 0xff) >= 0xc2) {
+        if (pos >= mEnd || !isContinuation(mBytes[pos])) {
+          return -1;
+        }
+        c = ((b & 0x1f) << 6) | (mBytes[pos++] & 0x3f);
+      } else if ((b & 0xf0) == 0xe0) {
+        if (mEnd - pos < 2 || !isContinuation(mBytes[pos]) || !isContinuation(mBytes[pos + 1])) {
+          return -1;
+        }
+        c = ((b & 0x0f) << 12) | ((mBytes[pos] & 0x3f) << 6) | (mBytes[pos + 1] & 0x3f);
+        pos += 2;
+        if (c < 0x800) {
+          return -1;
+        }
+      } else if ((b & 0xf8) == 0xf0) {
+        if (mEnd - pos < 3 || !isContinuation(mBytes[pos]) ||
+            !isContinuation(mBytes[pos + 1]) || !isContinuation(mBytes[pos + 2])) {
+          return -1;
+        }
+        int codePoint = ((b & 0x07) << 18) | ((mBytes[pos] & 0x3f) << 12) |
+            ((mBytes[pos + 1] & 0x3f) << 6) | (mBytes[pos + 2] & 0x3f);
+        pos += 3;
+        if (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT) {
+          return -1;
+        }
+        if (decode) {
+          char[] chars = charBuffer(length + 2);
+          chars[length] = Character.highSurrogate(codePoint);
+          chars[length + 1] = Character.lowSurrogate(codePoint);
+        }
+        length += 2;
+        continue;
+      } else {
+        return -1;
+      }
+      if (decode) {
+        charBuffer(length + 1)[length] = (char) c;
+      }
+      length++;
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the position of the first byte at or after {@code pos} that is not printable ascii, or
+   * is a quote or a backslash.  Only whole words are checked, so the position returned may be
+   * before that byte, but never after it.
+   */
+  private int scanPlain(int pos) {
+    while (mEnd - pos >= 8) {
+      long word = mWords.getLong(pos);
+      // a byte that is zero in these has its high bit set in the masks below.  a borrow may also
+      // set it in the bytes above, but only the lowest byte found is used.
+      long quotes = word ^ 0x2222222222222222L;
+      long backslashes = word ^ 0x5c5c5c5c5c5c5c5cL;
+      long special =
+          ((quotes - ONES) & ~quotes) |
+          ((backslashes - ONES) & ~backslashes) |
+          // bytes below a space.
+          ((word - 0x2020202020202020L) & ~word) |
+          // bytes that are not ascii.
+          word;
+      special &= HIGH_BITS;
+      if (special != 0) {
+        return pos + (Long.numberOfTrailingZeros(special) >>> 3);
+      }
+      pos += 8;
+    }
+    return pos;
+  }
+
+  private static boolean isContinuation(byte b) {
+    return (b & 0xc0) == 0x80;
+  }
+
+  /**
+   * Returns {@link #mChars}, grown to hold at least {@code length} characters.  The characters
+   * already held are kept.
+   */
+  private char[] charBuffer(int length) {
+    if (mChars.length < length) {
+      char[] chars = new char[Math.max(length, mChars.length * 2)];
+      System.arraycopy(mChars, 0, chars, 0, mChars.length);
+      mChars = chars;
+    }
+    return mChars;
+  }
+
+  /**
+   * Thrown when the input must be parsed by jackson instead.  A single instance without a stack
+   * trace is thrown, since this is not an error but a change of plan.
+   */
+  public static final class FallbackException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private FallbackException() {
+      super("the input must be parsed by jackson", null, false, false);
+    }
+  }
+}
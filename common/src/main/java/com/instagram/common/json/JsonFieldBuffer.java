@@ -0,0 +1,50 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Buffers the leading fields of an object, for parsers that must see a later field before they
+ * can bind the earlier ones.  The generated parsers for classes with
+ * {@link com.instagram.common.json.annotation.JsonType#subtypes()} use this when the
+ * discriminator is not the first field of an object.
+ */
+public final class JsonFieldBuffer {
+  private JsonFieldBuffer() {}
+
+  /**
+   * Copies the fields of the object being read by {@code jp}, starting with the field at the
+   * current token, up to the field named {@code fieldName}.  {@code jp} is left on the name of that
+   * field, or on the end of the object if there is no such field.
+   *
+   * @return a parser over an object holding the copied fields, positioned on its start.  The
+   * caller must close it.
+   */
+  public static JsonParser bufferFieldsUntil(JsonParser jp, String fieldName) throws IOException {
+    byte[] json;
+    JsonGeneratorPool pool = JsonGeneratorPool.acquire();
+    try {
+      JsonGenerator generator = pool.getBytesGenerator();
+      generator.writeStartObject();
+      while (jp.getCurrentToken() == JsonToken.FIELD_NAME &&
+          !fieldName.equals(jp.getCurrentName())) {
+        // copies the name and the value that follows it.
+        generator.copyCurrentStructure(jp);
+        jp.nextToken();
+      }
+      generator.writeEndObject();
+      json = pool.finishBytes();
+    } finally {
+      pool.release();
+    }
+
+    JsonParser buffered = JsonFactoryHolder.APP_FACTORY.createParser(json);
+    buffered.nextToken();
+    return buffered;
+  }
+}
@@ -0,0 +1,180 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SegmentedStringWriter;
+
+/**
+ * Holds the generators and output buffers that the generated serializers reuse from one call to
+ * the next, so that serializing an object does not allocate a new writer, buffer and generator
+ * each time.  Each thread gets its own instance.
+ * <p/>
+ * A serializer calls {@link #acquire()}, writes one root-level value to one of the generators,
+ * collects the output with {@link #finishString()} or {@link #finishBytes()}, and then calls
+ * {@link #release()} in a finally block.  If serialization is nested (for instance, from custom
+ * serialize code) while the thread's instance is in use, {@link #acquire()} returns a throwaway
+ * instance instead.
+ * <p/>
+ * The byte output is kept in a single array, which the serializers size up front from the
+ * generated {@code estimateSerializedSize}, so that a large object is not copied each time the
+ * buffer fills up.  An array that has grown beyond {@link #MAX_RETAINED_CAPACITY} is dropped
+ * once its output is collected.  The string output is kept in jackson's segmented writer, which
+ * holds on to its largest segment, so the writer is replaced in the same way once it has held more
+ * than {@link #MAX_RETAINED_CAPACITY} characters.
+ */
+public final class JsonGeneratorPool {
+  private static final int INITIAL_CAPACITY = 1024;
+  private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+  private static final ThreadLocal<JsonGeneratorPool> sThreadLocalPool =
+      new ThreadLocal<JsonGeneratorPool>() {
+        @Override
+        protected JsonGeneratorPool initialValue() {
+          return new JsonGeneratorPool();
+        }
+      };
+
+  private SegmentedStringWriter mStringWriter;
+  private final OutputBuffer mOutputBuffer;
+  private JsonGenerator mStringGenerator;
+  private JsonGenerator mBytesGenerator;
+  private JsonGenerator mCurrentGenerator;
+  private boolean mInUse;
+  private boolean mFinished;
+
+  private JsonGeneratorPool() {
+    // no buffer recycler: the buffers stay with this object instead of being handed back to
+    // jackson, which would leave them unusable for the next call.
+    mStringWriter = new SegmentedStringWriter(null);
+    mOutputBuffer = new OutputBuffer();
+  }
+
+  /**
+   * Returns the instance for the current thread, or a new instance if that one is in use.
+   */
+  public static JsonGeneratorPool acquire() {
+    JsonGeneratorPool pool = sThreadLocalPool.get();
+    if (pool.mInUse) {
+      pool = new JsonGeneratorPool();
+    }
+    pool.mInUse = true;
+    pool.mFinished = false;
+    return pool;
+  }
+
+  /**
+   * Returns a generator that writes characters, to be collected with {@link #finishString()}.
+   */
+  public JsonGenerator getStringGenerator() throws IOException {
+    if (mStringGenerator == null) {
+      mStringGenerator = JsonFactoryHolder.APP_FACTORY.createGenerator(mStringWriter);
+      mStringGenerator.setRootValueSeparator(null);
+    }
+    mCurrentGenerator = mStringGenerator;
+    return mStringGenerator;
+  }
+
+  /**
+   * Returns a generator that writes UTF-8 bytes, to be collected with {@link #finishBytes()}.
+   */
+  public JsonGenerator getBytesGenerator() throws IOException {
+    return getBytesGenerator(0);
+  }
+
+  /**
+   * Returns a generator that writes UTF-8 bytes, to be collected with {@link #finishBytes()}.  The
+   * output buffer is first grown to hold at least {@code sizeHint} bytes.
+   */
+  public JsonGenerator getBytesGenerator(int sizeHint) throws IOException {
+    mOutputBuffer.ensureCapacity(sizeHint);
+    if (mBytesGenerator == null) {
+      mBytesGenerator =
+          JsonFactoryHolder.APP_FACTORY.createGenerator(mOutputBuffer, JsonEncoding.UTF8);
+      mBytesGenerator.setRootValueSeparator(null);
+    }
+    mCurrentGenerator = mBytesGenerator;
+    return mBytesGenerator;
+  }
+
+  /**
+   * Returns everything written to the generator returned by {@link #getStringGenerator()}, and
+   * empties the buffer for the next call.
+   */
+  public String finishString() throws IOException {
+    mStringGenerator.flush();
+    mFinished = true;
+    String result = mStringWriter.getAndClear();
+    if (result.length() > MAX_RETAINED_CAPACITY) {
+      dropStringWriter();
+    }
+    return result;
+  }
+
+  /**
+   * Returns everything written to the generator returned by {@link #getBytesGenerator()}, and
+   * empties the buffer for the next call.
+   */
+  public byte[] finishBytes() throws IOException {
+    mBytesGenerator.flush();
+    mFinished = true;
+    byte[] result = mOutputBuffer.toByteArray();
+    mOutputBuffer.clear();
+    return result;
+  }
+
+  /**
+   * Makes this instance available to the next {@link #acquire()} on this thread.  If the output
+   * was not collected, for instance because serialization threw, the generator that was in use is
+   * dropped since its state can no longer be trusted.
+   */
+  public void release() {
+    if (!mFinished && mCurrentGenerator != null) {
+      if (mCurrentGenerator == mStringGenerator) {
+        dropStringWriter();
+      } else {
+        mBytesGenerator = null;
+        mOutputBuffer.clear();
+      }
+    }
+    mCurrentGenerator = null;
+    mInUse = false;
+  }
+
+  /**
+   * Replaces the string writer, and with it the segments it holds, along with the generator that
+   * writes to it.
+   */
+  private void dropStringWriter() {
+    mStringWriter = new SegmentedStringWriter(null);
+    mStringGenerator = null;
+  }
+
+  /**
+   * A {@link ByteArrayOutputStream} whose array can be grown ahead of the writes.
+   */
+  private static final class OutputBuffer extends ByteArrayOutputStream {
+    private OutputBuffer() {
+      super(INITIAL_CAPACITY);
+    }
+
+    private void ensureCapacity(int capacity) {
+      if (buf.length < capacity) {
+        byte[] grown = new byte[capacity];
+        System.arraycopy(buf, 0, grown, 0, count);
+        buf = grown;
+      }
+    }
+
+    private void clear() {
+      reset();
+      if (buf.length > MAX_RETAINED_CAPACITY) {
+        buf = new byte[INITIAL_CAPACITY];
+      }
+    }
+  }
+}
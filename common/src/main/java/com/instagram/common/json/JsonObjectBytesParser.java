@@ -0,0 +1,17 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+
+/**
+ * A {@link JsonObjectParser} that can also parse an object held in UTF-8 bytes.  The {@code PARSER}
+ * of each generated helper for a class that is not abstract is one of these.
+ */
+public interface JsonObjectBytesParser<T> extends JsonObjectParser<T> {
+  /**
+   * Parses the object between {@code offset} and {@code offset + length}.  This behaves like the
+   * generated {@code parseFromJson(byte[], int, int)}.
+   */
+  T parseFromJson(byte[] bytes, int offset, int length) throws IOException;
+}
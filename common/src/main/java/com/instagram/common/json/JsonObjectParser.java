@@ -0,0 +1,21 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * Parses a json object into an instance of {@code T}.  Each generated helper for a class that is
+ * not abstract exposes one of these as {@code PARSER}, so that runtime code can parse objects of a
+ * type it does not know about statically.
+ */
+public interface JsonObjectParser<T> {
+  /**
+   * Parses the object starting at the current token of {@code jp}.  This behaves like the
+   * generated {@code parseFromJson(JsonParser)}: if the current token does not start an object,
+   * the value is skipped and null is returned.
+   */
+  T parseFromJson(JsonParser jp) throws IOException;
+}
@@ -0,0 +1,46 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.util.ArrayDeque;
+
+/**
+ * Holds instances of a {@link com.instagram.common.json.annotation.JsonType} class that the
+ * generated {@code parseInto} binds into instead of allocating new ones.  A pool is installed on
+ * a helper with its generated {@code setObjectPool}, and instances are handed back with the
+ * generated {@code recycle}.  The generated {@code reset} recycles the sub-objects of list fields,
+ * so that reparsing a list into a reused instance takes its elements from the pool.
+ * <p/>
+ * Each thread has its own instances, so a pool can be shared by parsers on several threads
+ * without locking.  Each thread holds at most {@code maxSize} instances; any more are dropped.
+ */
+public final class JsonObjectPool<T> {
+  private final int mMaxSize;
+  private final ThreadLocal<ArrayDeque<T>> mInstances = new ThreadLocal<ArrayDeque<T>>() {
+    @Override
+    protected ArrayDeque<T> initialValue() {
+      return new ArrayDeque<T>();
+    }
+  };
+
+  public JsonObjectPool(int maxSize) {
+    mMaxSize = maxSize;
+  }
+
+  /**
+   * Returns an instance released on this thread, or null if there are none.
+   */
+  public T acquire() {
+    return mInstances.get().pollFirst();
+  }
+
+  /**
+   * Adds an instance that is no longer in use to this thread's instances.
+   */
+  public void release(T instance) {
+    ArrayDeque<T> instances = mInstances.get();
+    if (instances.size() < mMaxSize) {
+      instances.addFirst(instance);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Parses a json array of objects held in UTF-8 bytes on the threads of a {@link ForkJoinPool}.
+ * The generated helpers hold one of these for {@code parseArrayParallel}.
+ * <p/>
+ * The calling thread finds the bounds of the elements with a quick scan that only looks at
+ * brackets, quotes and backslashes.  Each time the elements found add up to a chunk, the chunk is
+ * handed to the pool, so the workers bind elements while the scan goes on.  The chunks are of
+ * about the same size in bytes, and each element is bound with
+ * {@link #parseElement(byte[], int, int)}, which checks it in full.  The results are returned in
+ * the order of the input.
+ * <p/>
+ * As with {@link JsonArrayIterator}, elements that are not objects are skipped, and a value that
+ * is not an array is treated as an empty array.  If the scan cannot find the bounds of the
+ * elements, because the input is malformed or in a form it does not handle, the array is parsed
+ * on the calling thread by jackson instead, which also reports any error.  If several elements
+ * are malformed, the error thrown is the one for the first of them.
+ */
+public abstract class JsonParallelArrayParser<T> {
+  // chunks are at least this large, so that the work of a chunk outweighs the cost of handing
+  // it to the pool.
+  private static final int MIN_CHUNK_BYTES = 16 * 1024;
+  // the number of chunks per thread, so that a slow chunk does not hold the others up.
+  private static final int CHUNKS_PER_THREAD = 4;
+
+  private final JsonObjectParser<T> mParser;
+
+  /**
+   * @param parser parses the array when the elements cannot be found by the scan.
+   */
+  protected JsonParallelArrayParser(JsonObjectParser<T> parser) {
+    mParser = parser;
+  }
+
+  /**
+   * Parses the element between {@code offset} and {@code offset + length}.  This behaves like
+   * the generated {@code parseFromJson(byte[], int, int)}, and is called on the threads of the
+   * pool.
+   */
+  protected abstract T parseElement(byte[] bytes, int offset, int length) throws IOException;
+
+  /**
+   * Parses the array between {@code offset} and {@code offset + length}, binding the elements on
+   * the threads of {@code pool}.
+   */
+  public List<T> parse(byte[] bytes, int offset, int length, ForkJoinPool pool)
+      throws IOException {
+    JsonValueScanner scanner = new JsonValueScanner(bytes, offset, offset + length);
+    if (scanner.skipWhitespace() != '[') {
+      return parseSequentially(bytes, offset, length);
+    }
+    scanner.advance();
+
+    int chunkBytes =
+        Math.max(MIN_CHUNK_BYTES, length / (pool.getParallelism() * CHUNKS_PER_THREAD));
+    List<ParseTask> tasks = new ArrayList<ParseTask>();
+    IntList bounds = new IntList();
+    while (true) {
+      int b = scanner.skipWhitespace();
+      if (b == ']') {
+        break;
+      }
+      if (!bounds.isEmpty() || !tasks.isEmpty()) {
+        if (b != ',') {
+          return cancelAndParseSequentially(tasks, bytes, offset, length);
+        }
+        scanner.advance();
+        scanner.skipWhitespace();
+      }
+      int start = scanner.getPosition();
+      if (!scanner.skipValue()) {
+        return cancelAndParseSequentially(tasks, bytes, offset, length);
+      }
+      bounds.add(start);
+      bounds.add(scanner.getPosition());
+      if (scanner.getPosition() - bounds.get(0) >= chunkBytes) {
+        tasks.add(submit(pool, bytes, bounds));
+        bounds.clear();
+      }
+    }
+    if (!bounds.isEmpty()) {
+      tasks.add(submit(pool, bytes, bounds));
+    }
+
+    List<T> results = new ArrayList<T>();
+    IOException failure = null;
+    for (ParseTask task : tasks) {
+      task.join();
+      if (failure == null) {
+        failure = task.mFailure;
+        results.addAll(task.mResults);
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return results;
+  }
+
+  private ParseTask submit(ForkJoinPool pool, byte[] bytes, IntList bounds) {
+    ParseTask task = new ParseTask(bytes, bounds.toArray());
+    pool.execute(task);
+    return task;
+  }
+
+  /**
+   * Gives up on the chunks handed to the pool, since the array could not be scanned, and parses it
+   * on this thread instead.
+   */
+  private List<T> cancelAndParseSequentially(
+      List<ParseTask> tasks, byte[] bytes, int offset, int length) throws IOException {
+    for (ParseTask task : tasks) {
+      task.cancel(false);
+    }
+    return parseSequentially(bytes, offset, length);
+  }
+
+  private List<T> parseSequentially(byte[] bytes, int offset, int length) throws IOException {
+    List<T> list = new ArrayList<T>();
+    JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(bytes, offset, length);
+    try {
+      if (jp.nextToken() != JsonToken.START_ARRAY) {
+        jp.skipChildren();
+        return list;
+      }
+      while (true) {
+        JsonToken token = jp.nextToken();
+        if (token == JsonToken.END_ARRAY || token == null) {
+          return list;
+        }
+        T element = mParser.parseFromJson(jp);
+        if (element != null) {
+          list.add(element);
+        }
+      }
+    } finally {
+      jp.close();
+    }
+  }
+
+  /**
+   * Binds the elements of a chunk, up to the first one that is malformed.
+   */
+  private final class ParseTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+
+    private final byte[] mBytes;
+    // the start and the end of each element, in turn.
+    private final int[] mBounds;
+    private final List<T> mResults = new ArrayList<T>();
+    private IOException mFailure;
+
+    private ParseTask(byte[] bytes, int[] bounds) {
+      mBytes = bytes;
+      mBounds = bounds;
+    }
+
+    @Override
+    protected void compute() {
+      for (int ix = 0; ix < mBounds.length; ix += 2) {
+        try {
+          T element = parseElement(mBytes, mBounds[ix], mBounds[ix + 1] - mBounds[ix]);
+          if (element != null) {
+            mResults.add(element);
+          }
+        } catch (IOException ex) {
+          mFailure = ex;
+          return;
+        }
+      }
+    }
+  }
+}
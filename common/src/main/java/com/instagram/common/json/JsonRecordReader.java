@@ -0,0 +1,350 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Reads a stream of json records, such as newline-delimited json, or any root values separated by
+ * whitespace, and binds them on worker threads.  The generated helpers return one of these from
+ * {@code parseRecords}.
+ * <p/>
+ * A thread reads the stream, finds where each record ends on the raw bytes, and hands the records
+ * to the workers in batches of about 64KB.  Each record is bound with the generated
+ * {@code parseFromJson(byte[], int, int)}.  The records are returned in the order of the input if
+ * {@code ordered} is true, and otherwise in the order they are bound, which keeps the workers busy
+ * when some batches take longer than others.
+ * <p/>
+ * The queues between the threads are bounded, so the stream is only read ahead of the caller by a
+ * few batches per worker: when the caller stops taking records, the workers and then the reading
+ * thread wait for it.
+ * <p/>
+ * As with {@link JsonArrayIterator}, records that are not objects are skipped, and an error
+ * reading or parsing the input is thrown as an {@link JsonArrayIterator.IterationException}
+ * wrapping it, once the records before it have been returned.  Any other exception thrown while
+ * reading the input or binding a record, such as one from a postprocessing hook, is thrown in the
+ * same way wrapped in a {@link RuntimeException}.  The stream is closed once it has been read.  A
+ * caller that stops early must call {@link #close()}, which also stops the threads.
+ */
+public final class JsonRecordReader<T> implements Iterator<T>, Closeable {
+  private static final int BUFFER_BYTES = 64 * 1024;
+  // the number of batches per worker that may be waiting to be bound, or to be returned.
+  private static final int BATCHES_PER_THREAD = 2;
+
+  private final InputStream mInputStream;
+  private final JsonParallelArrayParser<T> mParser;
+  private final boolean mOrdered;
+  private final int mThreadCount;
+  // batches waiting for a worker.
+  private final BlockingQueue<Batch> mWork;
+  // every batch in the order of the input, if ordered, and otherwise the batches that are bound.
+  private final BlockingQueue<Batch> mResults;
+  // marks the end of mWork and mResults.
+  private final Batch mEnd = new Batch(null, null);
+  private final List<Thread> mThreads = new ArrayList<Thread>();
+
+  private Batch mBatch;
+  private int mIndex;
+  private int mEndsSeen;
+  private boolean mFinished;
+  private volatile boolean mClosed;
+
+  /**
+   * @param inputStream the stream, which is closed once it has been read.
+   * @param parser binds each record.
+   * @param threadCount the number of worker threads.
+   * @param ordered if true, the records are returned in the order of the input.
+   */
+  public JsonRecordReader(
+      InputStream inputStream,
+      JsonParallelArrayParser<T> parser,
+      int threadCount,
+      boolean ordered) {
+    if (threadCount < 1) {
+      throw new IllegalArgumentException("threadCount must be positive: " + threadCount);
+    }
+    mInputStream = inputStream;
+    mParser = parser;
+    mOrdered = ordered;
+    mThreadCount = threadCount;
+    mWork = new ArrayBlockingQueue<Batch>(threadCount * BATCHES_PER_THREAD);
+    mResults = new ArrayBlockingQueue<Batch>(threadCount * BATCHES_PER_THREAD * 2);
+
+    mThreads.add(new Thread(new Runnable() {
+      @Override
+      public void run() {
+        readRecords();
+      }
+    }, "JsonRecordReader-reader"));
+    for (int ix = 0; ix < threadCount; ix++) {
+      mThreads.add(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          bindRecords();
+        }
+      }, "JsonRecordReader-worker-" + ix));
+    }
+    for (Thread thread : mThreads) {
+      thread.setDaemon(true);
+      thread.start();
+    }
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!mFinished) {
+      if (mBatch != null) {
+        if (mIndex < mBatch.mRecords.size()) {
+          return true;
+        }
+        if (mBatch.mFailure != null) {
+          Throwable failure = mBatch.mFailure;
+          finish();
+          if (failure instanceof IOException) {
+            throw new JsonArrayIterator.IterationException((IOException) failure);
+          }
+          throw new RuntimeException(failure);
+        }
+      }
+      mBatch = null;
+      mIndex = 0;
+      try {
+        Batch batch = mResults.take();
+        if (batch == mEnd) {
+          // unordered, each worker adds an end marker once it is done.
+          if (mOrdered || ++mEndsSeen == mThreadCount) {
+            finish();
+          }
+          continue;
+        }
+        batch.mDone.await();
+        mBatch = batch;
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        finish();
+        throw new JsonArrayIterator.IterationException(new InterruptedIOException());
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public T next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    // drop our reference so the record can be collected as soon as the caller is done with it.
+    return mBatch.mRecords.set(mIndex++, null);
+  }
+
+  @Override
+  public void remove() {
+    throw new UnsupportedOperationException();
+  }
+
+  /**
+   * Stops reading, and closes the stream.
+   */
+  @Override
+  public void close() throws IOException {
+    finish();
+    mInputStream.close();
+  }
+
+  private void finish() {
+    mFinished = true;
+    mBatch = null;
+    mClosed = true;
+    for (Thread thread : mThreads) {
+      thread.interrupt();
+    }
+  }
+
+  /**
+   * Reads the stream, and hands each buffer of complete records to the workers.  This runs on its
+   * own thread.
+   */
+  private void readRecords() {
+    try {
+      byte[] buffer = new byte[BUFFER_BYTES];
+      int length = 0;
+      boolean endOfStream = false;
+      while (!endOfStream && !mClosed) {
+        // fill the buffer, unless more input is not yet available.
+        do {
+          int read = mInputStream.read(buffer, length, buffer.length - length);
+          if (read < 0) {
+            endOfStream = true;
+          } else {
+            length += read;
+          }
+        } while (!endOfStream && length < buffer.length && mInputStream.available() > 0);
+
+        IntList bounds = new IntList();
+        int consumed = findRecords(buffer, length, endOfStream, bounds);
+        if (!bounds.isEmpty()) {
+          Batch batch = new Batch(buffer, bounds.toArray());
+          if (mOrdered) {
+            mResults.put(batch);
+          }
+          mWork.put(batch);
+        }
+
+        // the rest of the buffer is the start of a record that has not been read in full.
+        int remaining = length - consumed;
+        byte[] next = new byte[Math.max(BUFFER_BYTES, remaining * 2)];
+        System.arraycopy(buffer, consumed, next, 0, remaining);
+        buffer = next;
+        length = remaining;
+      }
+    } catch (InterruptedException ex) {
+      // the reader was closed.
+    } catch (Throwable ex) {
+      if (!mClosed) {
+        Batch failed = new Batch(null, new int[0]);
+        failed.mFailure = ex;
+        failed.mDone.countDown();
+        put(mResults, failed);
+      }
+    } finally {
+      try {
+        mInputStream.close();
+      } catch (IOException ex) {
+        // the records have all been read.
+      } finally {
+        addEndMarkers();
+      }
+    }
+  }
+
+  /**
+   * Tells the workers, and if ordered the caller, that there are no more batches.  The reading
+   * thread always does this unless the reader was closed, so that no thread waits forever.
+   */
+  private void addEndMarkers() {
+    if (mClosed || (mOrdered && !put(mResults, mEnd))) {
+      return;
+    }
+    for (int ix = 0; ix < mThreadCount; ix++) {
+      if (!put(mWork, mEnd)) {
+        return;
+      }
+    }
+  }
+
+  /**
+   * Adds the start and the end of each complete record in {@code buffer} to {@code bounds}, and
+   * returns the length of the part of the buffer that has been read.  At the end of the stream,
+   * whatever is left is a record, which fails to parse if it is incomplete.
+   */
+  private static int findRecords(byte[] buffer, int length, boolean endOfStream, IntList bounds) {
+    JsonValueScanner scanner = new JsonValueScanner(buffer, 0, length);
+    while (true) {
+      int b = scanner.skipWhitespace();
+      int start = scanner.getPosition();
+      if (b < 0) {
+        return length;
+      }
+      if (b == '}' || b == ']' || b == ',' || b == ':') {
+        // this can never start a value, so it is a record of its own, which fails to parse.
+        scanner.advance();
+      } else if (!scanner.skipValue()) {
+        if (!endOfStream) {
+          return start;
+        }
+        bounds.add(start);
+        bounds.add(length);
+        return length;
+      }
+      bounds.add(start);
+      bounds.add(scanner.getPosition());
+    }
+  }
+
+  /**
+   * Binds the records of each batch.  This runs on each worker thread.
+   */
+  private void bindRecords() {
+    try {
+      while (true) {
+        Batch batch = mWork.take();
+        if (batch == mEnd) {
+          return;
+        }
+        try {
+          bindBatch(batch);
+        } finally {
+          // the caller waits for every batch, even one that failed.
+          batch.mDone.countDown();
+          if (!mOrdered) {
+            mResults.put(batch);
+          }
+        }
+      }
+    } catch (InterruptedException ex) {
+      // the reader was closed.
+    } finally {
+      // unordered, the caller stops once each worker has added an end marker.
+      if (!mOrdered && !mClosed) {
+        put(mResults, mEnd);
+      }
+    }
+  }
+
+  /**
+   * Binds the records of a batch, up to the first one that fails.
+   */
+  private void bindBatch(Batch batch) {
+    int[] bounds = batch.mBounds;
+    for (int ix = 0; ix < bounds.length && !mClosed; ix += 2) {
+      try {
+        T record = mParser.parseElement(batch.mBytes, bounds[ix], bounds[ix + 1] - bounds[ix]);
+        if (record != null) {
+          batch.mRecords.add(record);
+        }
+      } catch (Throwable ex) {
+        batch.mFailure = ex;
+        return;
+      }
+    }
+  }
+
+  /**
+   * Adds a batch to a queue, and returns false if the reader was closed while waiting for room.
+   */
+  private boolean put(BlockingQueue<Batch> queue, Batch batch) {
+    try {
+      queue.put(batch);
+      return true;
+    } catch (InterruptedException ex) {
+      return false;
+    }
+  }
+
+  /**
+   * A buffer of records, and the records bound from it, up to the first one that fails.
+   */
+  private final class Batch {
+    private final byte[] mBytes;
+    // the start and the end of each record, in turn.
+    private final int[] mBounds;
+    private final List<T> mRecords = new ArrayList<T>();
+    private final CountDownLatch mDone = new CountDownLatch(1);
+    private Throwable mFailure;
+
+    private Batch(byte[] bytes, int[] bounds) {
+      mBytes = bytes;
+      mBounds = bounds;
+    }
+  }
+}
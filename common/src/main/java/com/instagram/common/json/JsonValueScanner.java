@@ -0,0 +1,178 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds where json values held in UTF-8 bytes end, without checking them, so that they can be
+ * handed whole to parsers on other threads.  Only brackets, quotes and backslashes are looked at,
+ * and like {@link JsonByteReader}, this checks eight bytes at a time for them.
+ */
+final class JsonValueScanner {
+  private static final long ONES = 0x0101010101010101L;
+  private static final long HIGH_BITS = 0x8080808080808080L;
+
+  private final byte[] mBytes;
+  private final ByteBuffer mWords;
+  private final int mEnd;
+  private int mPos;
+
+  JsonValueScanner(byte[] bytes, int offset, int end) {
+    mBytes = bytes;
+    mWords = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    mPos = offset;
+    mEnd = end;
+  }
+
+  int getPosition() {
+    return mPos;
+  }
+
+  /**
+   * Moves past the byte returned by {@link #skipWhitespace()}.
+   */
+  void advance() {
+    mPos++;
+  }
+
+  /**
+   * Skips whitespace and returns the next byte, without reading it, or -1 at the end of the
+   * input.
+   */
+  int skipWhitespace() {
+    while (mPos < mEnd) {
+      byte b = mBytes[mPos];
+      if (b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+        return b;
+      }
+      mPos++;
+    }
+    return -1;
+  }
+
+  /**
+   * Skips the value starting at the current position, and returns true.  Returns false if there
+   * is no value there, or if the end of the input is reached before the value is known to have
+   * ended.
+   */
+  boolean skipValue() {
+    if (mPos >= mEnd) {
+      return false;
+    }
+    byte b = mBytes[mPos];
+    if (b == '"') {
+      return skipString();
+    }
+    if (b != '{' && b != '[') {
+      // a number or a literal, which runs up to the next delimiter.
+      int start = mPos;
+      while (mPos < mEnd) {
+        b = mBytes[mPos];
+        if (b == ',' || b == ']' || b == '}' || b == ' ' || b == '\n' || b == '\r' ||
+            b == '\t' || b == '"' || b == '{' || b == '[') {
+          return mPos > start;
+        }
+        mPos++;
+      }
+      return false;
+    }
+
+    int depth = 0;
+    while (true) {
+      mPos = scanStructural(mPos);
+      if (mPos >= mEnd) {
+        return false;
+      }
+      b = mBytes[mPos];
+      if (b == '"') {
+        if (!skipString()) {
+          return false;
+        }
+        continue;
+      }
+      mPos++;
+      if (b == '{' || b == '[') {
+        depth++;
+      } else if (--depth == 0) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * Skips the string starting at the current position.  Returns false if it does not end.
+   */
+  private boolean skipString() {
+    mPos++;
+    while (true) {
+      mPos = scanQuoteOrBackslash(mPos);
+      if (mPos >= mEnd) {
+        return false;
+      }
+      if (mBytes[mPos] == '"') {
+        mPos++;
+        return true;
+      }
+      // skip the escaped character, which may be a quote.
+      mPos += 2;
+    }
+  }
+
+  /**
+   * Returns the position of the first quote, bracket or brace at or after {@code pos}, or the end
+   * of the input.
+   */
+  private int scanStructural(int pos) {
+    while (mEnd - pos >= 8) {
+      long word = mWords.getLong(pos);
+      long quotes = word ^ 0x2222222222222222L;
+      // setting 0x20 turns '[' into '{' and ']' into '}', and no other byte into either.
+      long folded = word | 0x2020202020202020L;
+      long opens = folded ^ 0x7b7b7b7b7b7b7b7bL;
+      long closes = folded ^ 0x7d7d7d7d7d7d7d7dL;
+      long found = hasZeroByte(quotes) | hasZeroByte(opens) | hasZeroByte(closes);
+      if (found != 0) {
+        return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+      pos += 8;
+    }
+    while (pos < mEnd) {
+      byte b = mBytes[pos];
+      if (b == '"' || b == '{' || b == '}' || b == '[' || b == ']') {
+        return pos;
+      }
+      pos++;
+    }
+    return mEnd;
+  }
+
+  /**
+   * Returns the position of the first quote or backslash at or after {@code pos}, or the end of
+   * the input.
+   */
+  private int scanQuoteOrBackslash(int pos) {
+    while (mEnd - pos >= 8) {
+      long word = mWords.getLong(pos);
+      long found = hasZeroByte(word ^ 0x2222222222222222L) |
+          hasZeroByte(word ^ 0x5c5c5c5c5c5c5c5cL);
+      if (found != 0) {
+        return pos + (Long.numberOfTrailingZeros(found) >>> 3);
+      }
+      pos += 8;
+    }
+    while (pos < mEnd && mBytes[pos] != '"' && mBytes[pos] != '\\') {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Returns a word with the high bit set in the lowest byte of {@code word} that is zero.  A
+   * borrow may also set it in the bytes above, but only the lowest byte found is used.
+   */
+  private static long hasZeroByte(long word) {
+    return (word - ONES) & ~word & HIGH_BITS;
+  }
+}
@@ -0,0 +1,129 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Holds a sub-object that is only parsed the first time it is read.  A field declared as
+ * {@code LazyJsonObject<T>}, where {@code T} is a class annotated with
+ * {@link com.instagram.common.json.annotation.JsonType}, is captured by the generated parser as
+ * json and bound by the first call to {@link #get()}.  This saves parse time and memory for
+ * sub-objects that are rarely read.
+ * <p/>
+ * The generated {@code parseFromJson(byte[])} finds the end of the sub-object with a quick scan and
+ * keeps a copy of its bytes as they are.  The other entry points read the input with jackson,
+ * which has no way to expose the span of a value, so the sub-object is copied token by token.
+ * Either way, the copy is bound with the generated {@code parseFromJson(byte[])}.
+ * <p/>
+ * A sub-object that is serialized before it is read is written back from the retained json
+ * without being parsed.
+ */
+public final class LazyJsonObject<T> {
+  private final JsonObjectParser<T> mParser;
+  private byte[] mJson;
+  private T mValue;
+
+  private LazyJsonObject(JsonObjectParser<T> parser, byte[] json, T value) {
+    mParser = parser;
+    mJson = json;
+    mValue = value;
+  }
+
+  /**
+   * Returns a holder for a value that has already been parsed or built.
+   */
+  public static <T> LazyJsonObject<T> of(T value) {
+    return new LazyJsonObject<T>(null, null, value);
+  }
+
+  /**
+   * Captures the object starting at the current token of {@code jp}, leaving the parser on the
+   * token that ends it.  If the current token does not start an object, the value is skipped and
+   * null is returned.
+   */
+  public static <T> LazyJsonObject<T> capture(JsonParser jp, JsonObjectParser<T> parser)
+      throws IOException {
+    if (jp.getCurrentToken() != JsonToken.START_OBJECT) {
+      jp.skipChildren();
+      return null;
+    }
+
+    // jackson does not reliably expose the input or the byte offsets of a token, so we keep a
+    // copy of the object instead of a span of the input.
+    JsonGeneratorPool pool = JsonGeneratorPool.acquire();
+    try {
+      pool.getBytesGenerator().copyCurrentStructure(jp);
+      return new LazyJsonObject<T>(parser, pool.finishBytes(), null);
+    } finally {
+      pool.release();
+    }
+  }
+
+  /**
+   * Captures the object that is the next value of {@code reader}, and skips it.  If the next value
+   * is not an object, it is skipped and null is returned.
+   */
+  public static <T> LazyJsonObject<T> capture(JsonByteReader reader, JsonObjectParser<T> parser) {
+    if (!reader.skipObject()) {
+      return null;
+    }
+    // a copy of the object alone, so that the rest of the input is not held on to.
+    int offset = reader.getValueOffset();
+    byte[] json = Arrays.copyOfRange(reader.getBytes(), offset, offset + reader.getValueLength());
+    return new LazyJsonObject<T>(parser, json, null);
+  }
+
+  /**
+   * Returns true if the value has been parsed.
+   */
+  public synchronized boolean isParsed() {
+    return mJson == null;
+  }
+
+  /**
+   * Returns the value, parsing it first if this is the first call.
+   */
+  public synchronized T get() throws IOException {
+    if (mJson != null) {
+      if (mParser instanceof JsonObjectBytesParser) {
+        mValue = ((JsonObjectBytesParser<T>) mParser).parseFromJson(mJson, 0, mJson.length);
+      } else {
+        JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(mJson);
+        try {
+          jp.nextToken();
+          mValue = mParser.parseFromJson(jp);
+        } finally {
+          jp.close();
+        }
+      }
+      // the retained json is no longer needed.
+      mJson = null;
+    }
+    return mValue;
+  }
+
+  /**
+   * If the value has not been parsed, writes the retained json to {@code generator} and returns
+   * true.  Otherwise, writes nothing and returns false, and the caller should serialize the value
+   * returned by {@link #get()}.
+   */
+  public synchronized boolean writeRetainedJson(JsonGenerator generator) throws IOException {
+    if (mJson == null) {
+      return false;
+    }
+    JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(mJson);
+    try {
+      jp.nextToken();
+      generator.copyCurrentStructure(jp);
+    } finally {
+      jp.close();
+    }
+    return true;
+  }
+}
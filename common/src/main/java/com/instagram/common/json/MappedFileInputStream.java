@@ -0,0 +1,122 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a file through memory maps rather than through heap buffers, so that parsing a large file
+ * does not allocate memory in proportion to its size.  The generated helpers read from one of these
+ * in {@code parseFromFile}, and it can be passed to any of the generated methods that take an
+ * {@link InputStream}.
+ * <p/>
+ * A map can cover at most 2GB, so the file is mapped one window at a time, and each window is
+ * no longer referenced once it has been read.  The pages of a window are only loaded as they are
+ * read, and are released by the system when it needs the memory.
+ * <p/>
+ * A window is only unmapped once it has been garbage collected, since java has no way to unmap it
+ * sooner.  Until then it holds on to address space, and on some systems, such as Windows, the
+ * file stays locked, even after {@link #close()}.  A smaller window limits how much address space
+ * the windows that have not yet been collected hold.
+ */
+public final class MappedFileInputStream extends InputStream {
+  private static final int DEFAULT_WINDOW_BYTES = 64 * 1024 * 1024;
+
+  private final RandomAccessFile mFile;
+  private final FileChannel mChannel;
+  private final long mSize;
+  private final int mWindowBytes;
+  // the position in the file of the start of the current window.
+  private long mWindowStart;
+  private MappedByteBuffer mWindow;
+
+  public MappedFileInputStream(File file) throws IOException {
+    this(file, DEFAULT_WINDOW_BYTES);
+  }
+
+  /**
+   * @param windowBytes the most bytes mapped at once.  A smaller window uses less address space,
+   * which is scarce in a 32-bit process.
+   */
+  public MappedFileInputStream(File file, int windowBytes) throws IOException {
+    if (windowBytes <= 0) {
+      throw new IllegalArgumentException("windowBytes must be positive: " + windowBytes);
+    }
+    mFile = new RandomAccessFile(file, "r");
+    mChannel = mFile.getChannel();
+    mSize = mChannel.size();
+    mWindowBytes = windowBytes;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!ensureWindow()) {
+      return -1;
+    }
+    return mWindow.get() & 0xff;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!ensureWindow()) {
+      return -1;
+    }
+    int count = Math.min(length, mWindow.remaining());
+    mWindow.get(buffer, offset, count);
+    return count;
+  }
+
+  @Override
+  public long skip(long count) throws IOException {
+    long position = getPosition();
+    long skipped = Math.max(0, Math.min(count, mSize - position));
+    if (mWindow != null && skipped <= mWindow.remaining()) {
+      mWindow.position(mWindow.position() + (int) skipped);
+    } else {
+      // the next read maps the window that holds the new position.
+      mWindowStart = position + skipped;
+      mWindow = null;
+    }
+    return skipped;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return (int) Math.min(mSize - getPosition(), Integer.MAX_VALUE);
+  }
+
+  @Override
+  public void close() throws IOException {
+    mWindow = null;
+    mFile.close();
+  }
+
+  private long getPosition() {
+    return mWindow != null ? mWindowStart + mWindow.position() : mWindowStart;
+  }
+
+  /**
+   * Maps the next window if the current one has been read.  Returns false at the end of the file.
+   */
+  private boolean ensureWindow() throws IOException {
+    if (mWindow != null && mWindow.hasRemaining()) {
+      return true;
+    }
+    long position = getPosition();
+    if (position >= mSize) {
+      return false;
+    }
+    long windowSize = Math.min(mSize - position, mWindowBytes);
+    mWindowStart = position;
+    mWindow = mChannel.map(FileChannel.MapMode.READ_ONLY, position, windowSize);
+    return true;
+  }
+}
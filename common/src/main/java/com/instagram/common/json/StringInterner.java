@@ -0,0 +1,126 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json;
+
+import java.io.IOException;
+
+import com.fasterxml.jackson.core.JsonParser;
+
+/**
+ * A bounded table of strings, used by the generated parsers for fields marked with
+ * {@link com.instagram.common.json.annotation.JsonField#intern()}.  A value is looked up by the
+ * characters in the parser's buffer, so a value that is already in the table is returned without
+ * creating a new {@link String}.
+ * <p/>
+ * The table is split into stripes, each guarded by its own lock, so parsers on different threads
+ * rarely wait on each other.  Each stripe is a two-way set-associative cache: a value that maps to
+ * a full set evicts the less recently used of the two entries, so the table never holds more than
+ * its capacity.  Values longer than {@link #MAX_INTERNED_LENGTH} are not interned, since long
+ * values are unlikely to repeat.
+ */
+public final class StringInterner {
+  public static final int MAX_INTERNED_LENGTH = 64;
+
+  private static final int DEFAULT_CAPACITY = 4096;
+  private static final int STRIPE_COUNT = 16;
+  private static final int WAYS = 2;
+
+  private static final StringInterner sDefault = new StringInterner(DEFAULT_CAPACITY);
+
+  private final Stripe[] mStripes;
+  private final int mSetMask;
+
+  /**
+   * @param capacity the maximum number of strings held.  This is rounded up so that each stripe
+   * holds a power of two number of sets.
+   */
+  public StringInterner(int capacity) {
+    int setsPerStripe = 1;
+    while (setsPerStripe * WAYS * STRIPE_COUNT < capacity) {
+      setsPerStripe <<= 1;
+    }
+    mSetMask = setsPerStripe - 1;
+    mStripes = new Stripe[STRIPE_COUNT];
+    for (int ix = 0; ix < STRIPE_COUNT; ix++) {
+      mStripes[ix] = new Stripe(setsPerStripe * WAYS);
+    }
+  }
+
+  /**
+   * Returns the table shared by all the generated parsers.
+   */
+  public static StringInterner getDefault() {
+    return sDefault;
+  }
+
+  /**
+   * Returns the text of the parser's current token, taken from the table if possible.
+   */
+  public String intern(JsonParser jp) throws IOException {
+    char[] chars = jp.getTextCharacters();
+    if (chars == null) {
+      return jp.getText();
+    }
+    return intern(chars, jp.getTextOffset(), jp.getTextLength());
+  }
+
+  /**
+   * Returns a string equal to {@code length} characters of {@code chars}, starting at
+   * {@code offset}, taken from the table if possible.
+   */
+  public String intern(char[] chars, int offset, int length) {
+    if (length > MAX_INTERNED_LENGTH) {
+      return new String(chars, offset, length);
+    }
+
+    int hash = 0;
+    for (int ix = offset, end = offset + length; ix < end; ix++) {
+      hash = 31 * hash + chars[ix];
+    }
+    // spread the high bits down, since the stripe and set are picked from the low bits.
+    int spread = hash ^ (hash >>> 16);
+    Stripe stripe = mStripes[spread & (STRIPE_COUNT - 1)];
+    int slot = ((spread >>> 4) & mSetMask) * WAYS;
+
+    synchronized (stripe) {
+      String[] values = stripe.mValues;
+      String first = values[slot];
+      if (matches(first, hash, chars, offset, length)) {
+        return first;
+      }
+      String second = values[slot + 1];
+      if (matches(second, hash, chars, offset, length)) {
+        // keep the most recently used value first.
+        values[slot] = second;
+        values[slot + 1] = first;
+        return second;
+      }
+
+      String value = new String(chars, offset, length);
+      values[slot] = value;
+      values[slot + 1] = first;
+      return value;
+    }
+  }
+
+  private static boolean matches(
+      String candidate, int hash, char[] chars, int offset, int length) {
+    if (candidate == null || candidate.length() != length || candidate.hashCode() != hash) {
+      return false;
+    }
+    for (int ix = 0; ix < length; ix++) {
+      if (candidate.charAt(ix) != chars[offset + ix]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Stripe {
+    private final String[] mValues;
+
+    private Stripe(int size) {
+      mValues = new String[size];
+    }
+  }
+}
@@ -26,6 +26,13 @@ public @interface JsonField {
    */
   public enum TypeMapping { EXACT, COERCED }
 
+  /**
+   * This controls whether the serializer writes a field that holds its default value: an empty
+   * collection, or a primitive that is zero or false.  A null is never written.
+   * {@code INHERIT} follows {@link JsonType#omitDefaultValues()}.
+   */
+  public enum DefaultValues { INHERIT, WRITE, OMIT }
+
   /**
    * This is the field name in json.
    */
@@ -55,7 +62,8 @@ public @interface JsonField {
    *   </tr>
    * </table>
    *
-   * Sane defaults are provided except in the case of {@link Enum}.
+   * Sane defaults are provided for all the supported types.  The default for an {@link Enum}
+   * matches the name of a constant, and yields null for a value that is not one.
    */
   String valueExtractFormatter() default "";
 
@@ -170,8 +178,26 @@ public @interface JsonField {
    *   </tr>
    * </table>
    * <p/>
-   * Sane defaults are provided except in the case of {@link Enum}.  Use of this feature should be
-   * an exception rather than the norm.
+   * Sane defaults are provided for all the supported types.  The default for an {@link Enum}
+   * writes the name of the constant.  Use of this feature should be an exception rather than the
+   * norm.
    */
   String serializeCodeFormatter() default "";
+
+  /**
+   * If true, values parsed into this field are looked up in a bounded table of strings shared by
+   * all the generated parsers, so that repeated values share one {@link String} instance instead
+   * of each allocating its own.  This is worthwhile for fields with few distinct values, such as
+   * types or categories.  It may be applied to {@link String} fields and to lists or maps of
+   * {@link String}, and is ignored if {@link #valueExtractFormatter()} is specified.
+   *
+   * @see com.instagram.common.json.StringInterner
+   */
+  boolean intern() default false;
+
+  /**
+   * This controls whether the serializer skips this field when it holds its default value.
+   * @see DefaultValues
+   */
+  DefaultValues defaultValues() default DefaultValues.INHERIT;
 }
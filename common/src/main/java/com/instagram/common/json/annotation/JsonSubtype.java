@@ -0,0 +1,27 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.Target;
+
+import static java.lang.annotation.RetentionPolicy.CLASS;
+
+/**
+ * Registers a subclass of a class annotated with {@link JsonType}, in
+ * {@link JsonType#subtypes()}.  An object whose discriminator field holds {@link #value()} is
+ * parsed as an instance of {@link #type()}.
+ */
+@Retention(CLASS) @Target({})
+public @interface JsonSubtype {
+  /**
+   * The value of the discriminator field that selects this subtype.
+   */
+  String value();
+
+  /**
+   * The subtype.  This must be a class annotated with {@link JsonType} that extends the class
+   * declaring the registry, and it may not be abstract.
+   */
+  Class<?> type();
+}
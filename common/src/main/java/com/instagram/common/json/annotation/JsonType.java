@@ -20,6 +20,34 @@ public @interface JsonType {
    * This annotation specifies that a method with the name specified by
    * {@link #POSTPROCESSING_METHOD_NAME} (currently "postprocess") on the class that is being
    * generated that should be called once parsing is finished.
+   * <p/>
+   * The {@code byte[]} overloads of {@code parseFromJson} parse the input again with jackson if
+   * the generated byte parser gives up partway through.  The objects bound by the first attempt,
+   * whose method may already have been called, are then discarded, so the method may be called
+   * more than once for the same json.  It should not have side effects beyond the object itself.
    */
   boolean postprocessingEnabled() default false;
+
+  /**
+   * If true, the serializer skips the fields of this class that hold their default value: empty
+   * collections, and primitives that are zero or false.  Nulls are never written.  Since a field
+   * missing from the json is left alone by the parser, this is only safe for fields that the
+   * constructor leaves at their default.  A field can override this with
+   * {@link JsonField#defaultValues()}.
+   */
+  boolean omitDefaultValues() default false;
+
+  /**
+   * The json name of the field that tells apart the {@link #subtypes()}.  This field is written
+   * first when a subtype is serialized, and is not declared as a {@link JsonField}.
+   */
+  String discriminatorFieldName() default "";
+
+  /**
+   * The subclasses that the generated parser for this class may return.  If this is not empty,
+   * the parser reads the field named by {@link #discriminatorFieldName()} and binds the object
+   * with the subtype registered for its value.  An object without a known value is parsed as an
+   * instance of this class, or skipped if this class is abstract.
+   */
+  JsonSubtype[] subtypes() default {};
 }
@@ -0,0 +1,241 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.squareup.javawriter.JavaWriter;
+
+/**
+ * Writes the code that maps a string onto its index in a fixed list of candidates, returning -1 if
+ * the string is not one of the candidates.  The input is either a {@link String} variable, or a
+ * range of a {@code char[]}, such as the text buffer of a json parser.
+ * <p/>
+ * Rather than comparing the input against every candidate, the generated code switches on the
+ * length of the input, and then on the character positions that tell the remaining candidates
+ * apart.  This is effectively a radix trie that only branches where the candidates differ, so at
+ * most one full string comparison is made per lookup.
+ * <p/>
+ * The input may also be a range of a {@code byte[]} holding UTF-8, in which case the candidates are
+ * compared on their UTF-8 encodings.
+ */
+class FieldNameSwitch {
+  private final String mVarname;
+  private final String mCharsVarname;
+  private final String mOffsetVarname;
+  private final String mLengthVarname;
+  private final Map<String, Integer> mCandidates;
+  // true if the input is UTF-8 bytes, some of which may be negative.
+  private final boolean mSignedBytes;
+
+  /**
+   * @param varname the name of the {@link String} variable being looked up.
+   * @param candidates the candidates.  The index of a candidate in this list is the value returned
+   * when it is matched.  If a candidate occurs more than once, the first index wins.
+   */
+  FieldNameSwitch(String varname, List<String> candidates) {
+    this(varname, null, null, null, candidates, false);
+  }
+
+  /**
+   * @param charsVarname the name of the {@code char[]} variable holding the input.
+   * @param offsetVarname the name of the variable holding the offset of the input in the array.
+   * @param lengthVarname the name of the variable holding the length of the input.
+   * @param candidates the candidates, as in {@link #FieldNameSwitch(String, List)}.
+   */
+  FieldNameSwitch(
+      String charsVarname,
+      String offsetVarname,
+      String lengthVarname,
+      List<String> candidates) {
+    this(null, charsVarname, offsetVarname, lengthVarname, candidates, false);
+  }
+
+  /**
+   * Returns a switch over a range of a {@code byte[]} holding the UTF-8 encoding of the input.
+   *
+   * @param bytesVarname the name of the {@code byte[]} variable holding the input.
+   * @param offsetVarname the name of the variable holding the offset of the input in the array.
+   * @param lengthVarname the name of the variable holding the length of the input in bytes.
+   * @param candidates the candidates, as in {@link #FieldNameSwitch(String, List)}.
+   */
+  static FieldNameSwitch forUtf8Bytes(
+      String bytesVarname,
+      String offsetVarname,
+      String lengthVarname,
+      List<String> candidates) {
+    // each byte of the encoding stands in for a character, so the rest works unchanged.
+    Charset utf8 = Charset.forName("UTF-8");
+    List<String> encoded = new ArrayList<String>();
+    boolean signedBytes = false;
+    for (String candidate : candidates) {
+      byte[] bytes = candidate.getBytes(utf8);
+      char[] chars = new char[bytes.length];
+      for (int ix = 0; ix < bytes.length; ix++) {
+        chars[ix] = (char) (bytes[ix] & 0xff);
+        signedBytes |= bytes[ix] < 0;
+      }
+      encoded.add(new String(chars));
+    }
+    return new FieldNameSwitch(
+        null, bytesVarname, offsetVarname, lengthVarname, encoded, signedBytes);
+  }
+
+  private FieldNameSwitch(
+      String varname,
+      String charsVarname,
+      String offsetVarname,
+      String lengthVarname,
+      List<String> candidates,
+      boolean signedBytes) {
+    mVarname = varname;
+    mCharsVarname = charsVarname;
+    mOffsetVarname = offsetVarname;
+    mLengthVarname = lengthVarname;
+    mSignedBytes = signedBytes;
+    mCandidates = new LinkedHashMap<String, Integer>();
+    for (int ix = 0; ix < candidates.size(); ix++) {
+      if (!mCandidates.containsKey(candidates.get(ix))) {
+        mCandidates.put(candidates.get(ix), ix);
+      }
+    }
+  }
+
+  /**
+   * Writes a switch on the length and the characters of the input.
+   */
+  void writeSwitch(JavaWriter writer) throws IOException {
+    Map<Integer, List<String>> byLength = new TreeMap<Integer, List<String>>();
+    for (String candidate : mCandidates.keySet()) {
+      List<String> group = byLength.get(candidate.length());
+      if (group == null) {
+        group = new ArrayList<String>();
+        byLength.put(candidate.length(), group);
+      }
+      group.add(candidate);
+    }
+
+    if (!byLength.isEmpty()) {
+      writer.beginControlFlow("switch (" + lengthExpression() + ")");
+      for (Map.Entry<Integer, List<String>> entry : byLength.entrySet()) {
+        writer.beginControlFlow("case " + entry.getKey() + ":");
+        if (writeGroup(writer, entry.getValue())) {
+          writer.emitStatement("break");
+        }
+        writer.endControlFlow();
+      }
+      writer.endControlFlow();
+    }
+    writer.emitStatement("return -1");
+  }
+
+  /**
+   * Writes an if-else chain that compares the input against each candidate in turn.  This is what
+   * we generated before {@link #writeSwitch(JavaWriter)} existed.  This only supports a
+   * {@link String} input.
+   */
+  void writeChain(JavaWriter writer) throws IOException {
+    for (Map.Entry<String, Integer> entry : mCandidates.entrySet()) {
+      writer.beginControlFlow("if (" + equalsExpression(entry.getKey()) + ")")
+            .emitStatement("return %d", entry.getValue())
+          .endControlFlow();
+    }
+    writer.emitStatement("return -1");
+  }
+
+  /**
+   * Writes the code to tell apart a group of distinct candidates that all have the same length.
+   * Returns false if the code always returns, so that nothing may follow it.
+   */
+  private boolean writeGroup(JavaWriter writer, List<String> group) throws IOException {
+    if (group.size() == 1) {
+      String candidate = group.get(0);
+      if (mVarname == null && candidate.isEmpty()) {
+        // the length has already been checked, and there are no characters to compare.
+        writer.emitStatement("return %d", mCandidates.get(candidate));
+        return false;
+      }
+      writer.beginControlFlow("if (" + equalsExpression(candidate) + ")")
+            .emitStatement("return %d", mCandidates.get(candidate))
+          .endControlFlow();
+      return true;
+    }
+
+    // branch on the character position that splits the group into the most subgroups.
+    int length = group.get(0).length();
+    int bestPosition = 0;
+    Map<Character, List<String>> bestSplit = null;
+    for (int position = 0; position < length; position++) {
+      Map<Character, List<String>> split = new TreeMap<Character, List<String>>();
+      for (String candidate : group) {
+        List<String> subgroup = split.get(candidate.charAt(position));
+        if (subgroup == null) {
+          subgroup = new ArrayList<String>();
+          split.put(candidate.charAt(position), subgroup);
+        }
+        subgroup.add(candidate);
+      }
+      if (bestSplit == null || split.size() > bestSplit.size()) {
+        bestPosition = position;
+        bestSplit = split;
+      }
+    }
+
+    writer.beginControlFlow("switch (" + charAtExpression(bestPosition) + ")");
+    for (Map.Entry<Character, List<String>> entry : bestSplit.entrySet()) {
+      writer.beginControlFlow("case " + charLiteral(entry.getKey()) + ":");
+      writeGroup(writer, entry.getValue());
+      writer.emitStatement("break")
+          .endControlFlow();
+    }
+    writer.endControlFlow();
+    return true;
+  }
+
+  private String lengthExpression() {
+    return mVarname != null ? mVarname + ".length()" : mLengthVarname;
+  }
+
+  private String charAtExpression(int position) {
+    if (mVarname != null) {
+      return mVarname + ".charAt(" + position + ")";
+    }
+    String element = mCharsVarname + "[" + mOffsetVarname + " + " + position + "]";
+    return mSignedBytes ? "(" + element + " & 0xff)" : element;
+  }
+
+  /**
+   * Returns an expression that is true if the input equals {@code candidate}.  For a char buffer
+   * this compares every character, and assumes the length has already been checked.
+   */
+  private String equalsExpression(String candidate) {
+    if (mVarname != null) {
+      return JavaWriter.stringLiteral(candidate) + ".equals(" + mVarname + ")";
+    }
+    StringBuilder sb = new StringBuilder();
+    for (int ix = 0; ix < candidate.length(); ix++) {
+      if (ix > 0) {
+        sb.append(" && ");
+      }
+      sb.append(charAtExpression(ix)).append(" == ").append(charLiteral(candidate.charAt(ix)));
+    }
+    return sb.toString();
+  }
+
+  /**
+   * Returns a case label for a character.  Anything that is not plain printable ascii is written as
+   * its numeric value, which sidesteps the escaping rules for character literals.
+   */
+  private static String charLiteral(char c) {
+    if (c >= ' ' && c <= '~' && c != '\'' && c != '\\') {
+      return "'" + c + "'";
+    }
+    return Integer.toString(c);
+  }
+}
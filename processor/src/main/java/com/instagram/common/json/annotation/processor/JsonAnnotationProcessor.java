@@ -11,6 +11,7 @@ import javax.lang.model.SourceVersion;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.MirroredTypeException;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
 import javax.lang.model.util.Elements;
@@ -22,19 +23,24 @@ import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.Writer;
 import java.lang.annotation.Annotation;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import com.instagram.common.json.JsonAnnotationProcessorConstants;
 import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonSubtype;
 import com.instagram.common.json.annotation.JsonType;
 import com.instagram.common.json.annotation.util.Console;
 import com.instagram.common.json.annotation.util.ProcessorClassData;
 import com.instagram.common.json.annotation.util.TypeUtils;
 
 import static javax.lang.model.element.ElementKind.CLASS;
+import static javax.lang.model.element.ElementKind.ENUM_CONSTANT;
+import static javax.lang.model.element.ElementKind.FIELD;
 import static javax.lang.model.element.Modifier.*;
 
 /**
@@ -47,11 +53,12 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
   private Types mTypes;
   private Filer mFiler;
   private TypeUtils mTypeUtils;
+  private boolean mFieldNameChainEnabled;
   private static class State {
     private Map<TypeElement, JsonParserClassData> mClassElementToInjectorMap;
 
     State() {
-      mClassElementToInjectorMap = new HashMap<TypeElement, JsonParserClassData>();
+      mClassElementToInjectorMap = new LinkedHashMap<TypeElement, JsonParserClassData>();
     }
   }
   private State mState;
@@ -65,6 +72,8 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
     mTypes = env.getTypeUtils();
     mFiler = env.getFiler();
     mTypeUtils = new TypeUtils(mTypes, mMessager);
+    mFieldNameChainEnabled = JsonAnnotationProcessorConstants.FIELD_DISPATCH_CHAIN.equals(
+        env.getOptions().get(JsonAnnotationProcessorConstants.FIELD_DISPATCH_OPTION));
   }
 
   @Override
@@ -76,6 +85,14 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
     return supportTypes;
   }
 
+  @Override
+  public Set<String> getSupportedOptions() {
+    Set<String> supportedOptions = new LinkedHashSet<String>();
+    supportedOptions.add(JsonAnnotationProcessorConstants.FIELD_DISPATCH_OPTION);
+
+    return supportedOptions;
+  }
+
   @Override
   public SourceVersion getSupportedSourceVersion() {
     return SourceVersion.latestSupported();
@@ -158,19 +175,51 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
       JsonType annotation = element.getAnnotation(JsonType.class);
 
       String parentGeneratedClassName = null;
+      List<JsonParserClassData.InheritedField> inheritedFields =
+          new ArrayList<JsonParserClassData.InheritedField>();
+      String discriminatorFieldName = null;
+      String discriminatorValue = null;
 
       TypeMirror superclass = typeElement.getSuperclass();
-      // walk up the superclass hierarchy until we find another class we know about.
+      // walk up the whole superclass hierarchy, gathering the fields of the classes we know about.
+      // the superclasses may have been compiled separately, so we read their fields from the
+      // elements rather than from the state of this round.
       while (superclass.getKind() != TypeKind.NONE) {
         TypeElement superclassElement = (TypeElement) mTypes.asElement(superclass);
 
         if (superclassElement.getAnnotation(JsonType.class) != null) {
           String superclassPackageName = mTypeUtils.getPackageName(mElements, superclassElement);
-          parentGeneratedClassName = superclassPackageName + "." +
+          String superclassGeneratedClassName = superclassPackageName + "." +
               mTypeUtils.getPrefixForGeneratedClass(superclassElement, superclassPackageName) +
               JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX;
-
-          break;
+          if (parentGeneratedClassName == null) {
+            parentGeneratedClassName = superclassGeneratedClassName;
+          }
+
+          // if the nearest superclass with subtypes registers this class, we write its
+          // discriminator.
+          JsonType superclassAnnotation = superclassElement.getAnnotation(JsonType.class);
+          if (discriminatorFieldName == null) {
+            for (JsonSubtype subtype : superclassAnnotation.subtypes()) {
+              if (mTypes.isSameType(
+                  mTypes.erasure(getSubtypeMirror(subtype)),
+                  mTypes.erasure(typeElement.asType()))) {
+                discriminatorFieldName = superclassAnnotation.discriminatorFieldName();
+                discriminatorValue = subtype.value();
+                break;
+              }
+            }
+          }
+
+          // the index of each field in the superclass's helper is looked up by name when the
+          // generated class is loaded, so it does not depend on the order of the fields.
+          for (Element enclosedElement : superclassElement.getEnclosedElements()) {
+            JsonField fieldAnnotation = enclosedElement.getAnnotation(JsonField.class);
+            if (enclosedElement.getKind() == FIELD && fieldAnnotation != null) {
+              inheritedFields.add(new JsonParserClassData.InheritedField(
+                  superclassGeneratedClassName, fieldAnnotation.fieldName()));
+            }
+          }
         }
 
         superclass = superclassElement.getSuperclass();
@@ -191,11 +240,95 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
           },
           abstractClass,
           annotation.postprocessingEnabled(),
-          parentGeneratedClassName);
+          parentGeneratedClassName,
+          inheritedFields,
+          mFieldNameChainEnabled);
+      if (discriminatorFieldName != null) {
+        injector.setDiscriminator(discriminatorFieldName, discriminatorValue);
+      }
+      gatherSubtypes(typeElement, annotation, inheritedFields, injector);
       mState.mClassElementToInjectorMap.put(typeElement, injector);
     }
   }
 
+  /**
+   * This verifies the subtypes registered with {@link JsonType#subtypes()}, and passes them to
+   * {@code injector}.
+   */
+  private void gatherSubtypes(
+      TypeElement typeElement,
+      JsonType annotation,
+      List<JsonParserClassData.InheritedField> inheritedFields,
+      JsonParserClassData injector) {
+    String discriminatorFieldName = annotation.discriminatorFieldName();
+    JsonSubtype[] subtypes = annotation.subtypes();
+    if (discriminatorFieldName.isEmpty() && subtypes.length == 0) {
+      return;
+    }
+    if (discriminatorFieldName.isEmpty() || subtypes.length == 0) {
+      error(typeElement, "%s: subtypes require a discriminatorFieldName, and vice versa",
+          typeElement.getQualifiedName());
+      return;
+    }
+
+    // the discriminator is written by the serializer, so it may not also be a field.
+    List<String> fieldNames = new ArrayList<String>();
+    for (Element enclosedElement : typeElement.getEnclosedElements()) {
+      JsonField fieldAnnotation = enclosedElement.getAnnotation(JsonField.class);
+      if (enclosedElement.getKind() == FIELD && fieldAnnotation != null) {
+        fieldNames.add(fieldAnnotation.fieldName());
+      }
+    }
+    for (JsonParserClassData.InheritedField inheritedField : inheritedFields) {
+      fieldNames.add(inheritedField.getFieldName());
+    }
+    if (fieldNames.contains(discriminatorFieldName)) {
+      error(typeElement, "%s: the discriminator %s may not be declared as a @%s",
+          typeElement.getQualifiedName(), discriminatorFieldName,
+          JsonField.class.getSimpleName());
+      return;
+    }
+
+    List<JsonParserClassData.Subtype> subtypeData = new ArrayList<JsonParserClassData.Subtype>();
+    for (JsonSubtype subtype : subtypes) {
+      TypeMirror subtypeMirror = getSubtypeMirror(subtype);
+      TypeElement subtypeElement = (TypeElement) mTypes.asElement(subtypeMirror);
+      JsonType subtypeAnnotation = subtypeElement.getAnnotation(JsonType.class);
+      if (subtypeAnnotation == null ||
+          subtypeElement.getModifiers().contains(ABSTRACT) ||
+          !mTypes.isSubtype(
+              mTypes.erasure(subtypeMirror), mTypes.erasure(typeElement.asType()))) {
+        error(typeElement, "%s: subtype %s must be a concrete subclass annotated with @%s",
+            typeElement.getQualifiedName(), subtypeElement.getQualifiedName(),
+            JsonType.class.getSimpleName());
+        return;
+      }
+
+      String packageName = mTypeUtils.getPackageName(mElements, subtypeElement);
+      subtypeData.add(new JsonParserClassData.Subtype(
+          subtype.value(),
+          packageName + "." + mTypeUtils.getClassName(subtypeElement, packageName),
+          packageName + "." +
+              mTypeUtils.getPrefixForGeneratedClass(subtypeElement, packageName) +
+              JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX,
+          subtypeAnnotation.postprocessingEnabled()));
+    }
+    injector.setSubtypes(discriminatorFieldName, subtypeData);
+  }
+
+  /**
+   * Returns the type registered by {@code subtype}.  The class is not loaded at compile time, so
+   * reading it throws an exception that holds its type instead.
+   */
+  private static TypeMirror getSubtypeMirror(JsonSubtype subtype) {
+    try {
+      subtype.type();
+    } catch (MirroredTypeException ex) {
+      return ex.getTypeMirror();
+    }
+    throw new IllegalStateException("subtype class was loaded at compile time");
+  }
+
   /**
    * This finds the fields that are annotated with {@link JsonField}.
    */
@@ -239,6 +372,18 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
     data.setValueExtractFormatter(annotation.valueExtractFormatter());
     data.setAssignmentFormatter(annotation.fieldAssignmentFormatter());
     data.setSerializeCodeFormatter(annotation.serializeCodeFormatter());
+    data.setIntern(annotation.intern());
+    JsonType typeAnnotation = enclosingElement.getAnnotation(JsonType.class);
+    switch (annotation.defaultValues()) {
+      case WRITE:
+        data.setOmitDefault(false);
+        break;
+      case OMIT:
+        data.setOmitDefault(true);
+        break;
+      default:
+        data.setOmitDefault(typeAnnotation != null && typeAnnotation.omitDefaultValues());
+    }
     TypeUtils.CollectionType collectionType = mTypeUtils.getCollectionType(type);
     data.setCollectionType(collectionType);
 
@@ -248,6 +393,32 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
     }
 
     data.setParseType(mTypeUtils.getParseType(type, JsonType.class));
+    if (collectionType == TypeUtils.CollectionType.ARRAY &&
+        !isPrimitiveArrayComponent(data.getParseType())) {
+      error(element,
+          "%s: arrays must have a component type of boolean, int, long, float or double",
+          enclosingElement);
+      return;
+    }
+    if (collectionType == TypeUtils.CollectionType.MAP &&
+        data.getParseType() == TypeUtils.ParseType.UNSUPPORTED) {
+      error(element, "%s: maps must have String keys and a supported value type",
+          enclosingElement);
+      return;
+    }
+
+    if (collectionType == TypeUtils.CollectionType.LAZY &&
+        data.getParseType() != TypeUtils.ParseType.PARSABLE_OBJECT) {
+      error(element, "%s: lazy objects must be of a type annotated with @%s",
+          enclosingElement, JsonType.class.getSimpleName());
+      return;
+    }
+
+    if (annotation.intern() && data.getParseType() != TypeUtils.ParseType.STRING) {
+      error(element, "%s: only String fields may be interned", enclosingElement);
+      return;
+    }
+
     if (data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT) {
       TypeMirror erasedType = mTypes.erasure(type);
       DeclaredType declaredType = (DeclaredType) erasedType;
@@ -259,14 +430,43 @@ public class JsonAnnotationProcessor extends AbstractProcessor {
 
       data.setParsableType(packageName + "." + className);
       data.setParsableTypeParserClass(packageName + "." + parserClassName);
+      JsonType parsableTypeAnnotation = typeElement.getAnnotation(JsonType.class);
+      data.setParsableTypePolymorphic(typeElement.getModifiers().contains(ABSTRACT) ||
+          (parsableTypeAnnotation != null && parsableTypeAnnotation.subtypes().length > 0));
+
+      if (collectionType == TypeUtils.CollectionType.LAZY &&
+          typeElement.getModifiers().contains(ABSTRACT)) {
+        error(element, "%s: lazy objects may not be of an abstract type", enclosingElement);
+      }
     } else if (data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT) {
-      // verify that we have value extract and serializer formatters.
-      if (StringUtil.isNullOrEmpty(annotation.valueExtractFormatter()) ||
-          StringUtil.isNullOrEmpty(annotation.serializeCodeFormatter())) {
-        error(element,
-            "%s: enums must have both value extract formatters and serialize code formatters",
-            enclosingElement);
+      TypeElement typeElement = (TypeElement) ((DeclaredType) type).asElement();
+
+      String packageName = mTypeUtils.getPackageName(mElements, typeElement);
+      String className = mTypeUtils.getClassName(typeElement, packageName);
+
+      // the constants, in declaration order, so that a constant's index is its ordinal.
+      List<String> enumConstants = new ArrayList<String>();
+      for (Element enclosedElement : typeElement.getEnclosedElements()) {
+        if (enclosedElement.getKind() == ENUM_CONSTANT) {
+          enumConstants.add(enclosedElement.getSimpleName().toString());
+        }
       }
+
+      data.setParsableType(packageName + "." + className);
+      data.setEnumConstants(enumConstants);
+    }
+  }
+
+  private static boolean isPrimitiveArrayComponent(TypeUtils.ParseType parseType) {
+    switch (parseType) {
+      case BOOLEAN:
+      case INTEGER:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
     }
   }
 
@@ -6,9 +6,11 @@ import javax.annotation.processing.Messager;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import com.instagram.common.json.JsonAnnotationProcessorConstants;
@@ -31,17 +33,98 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
   private final boolean mAbstractClass;
   private final boolean mPostprocessingEnabled;
   private final String mParentInjectedClassName;
+  private final List<InheritedField> mInheritedFields;
+  private final boolean mFieldNameChainEnabled;
+  private String mSubtypeDiscriminatorFieldName;
+  private List<Subtype> mSubtypes = new ArrayList<Subtype>();
+  private String mDiscriminatorFieldName;
+  private String mDiscriminatorValue;
 
+  /**
+   * A field declared by a superclass annotated with {@link JsonType}.  The generated code binds
+   * these through the helper of the declaring class, so that the fields of the whole hierarchy are
+   * looked up in one switch.
+   */
+  static class InheritedField {
+    private final String mInjectedClassName;
+    private final String mFieldName;
+
+    /**
+     * @param injectedClassName the helper class of the class that declares the field.
+     * @param fieldName the json name of the field.
+     */
+    InheritedField(String injectedClassName, String fieldName) {
+      mInjectedClassName = injectedClassName;
+      mFieldName = fieldName;
+    }
+
+    String getFieldName() {
+      return mFieldName;
+    }
+  }
+
+  /**
+   * A subclass registered with {@link JsonType#subtypes()}.
+   */
+  static class Subtype {
+    private final String mValue;
+    private final String mClassName;
+    private final String mInjectedClassName;
+    private final boolean mPostprocessingEnabled;
+
+    /**
+     * @param value the value of the discriminator field that selects the subtype.
+     * @param className the fully qualified name of the subtype.
+     * @param injectedClassName the helper class of the subtype.
+     * @param postprocessingEnabled whether the subtype has postprocessing enabled.
+     */
+    Subtype(
+        String value,
+        String className,
+        String injectedClassName,
+        boolean postprocessingEnabled) {
+      mValue = value;
+      mClassName = className;
+      mInjectedClassName = injectedClassName;
+      mPostprocessingEnabled = postprocessingEnabled;
+    }
+  }
+
+  /**
+   * @param inheritedFields the fields declared by the superclasses, nearest superclass first.
+   */
   public JsonParserClassData(
       String classPackage, String className, String injectedClassName,
       AnnotationRecordFactory<String, TypeData> factory,
       boolean abstractClass,
       boolean postprocessingEnabled,
-      String parentInjectedClassName) {
+      String parentInjectedClassName,
+      List<InheritedField> inheritedFields,
+      boolean fieldNameChainEnabled) {
     super(classPackage, className, injectedClassName, factory);
     mAbstractClass = abstractClass;
     mPostprocessingEnabled = postprocessingEnabled;
     mParentInjectedClassName = parentInjectedClassName;
+    mInheritedFields = inheritedFields;
+    mFieldNameChainEnabled = fieldNameChainEnabled;
+  }
+
+  /**
+   * Makes the generated parser for this class dispatch on the field named
+   * {@code discriminatorFieldName} to one of {@code subtypes}.
+   */
+  public void setSubtypes(String discriminatorFieldName, List<Subtype> subtypes) {
+    mSubtypeDiscriminatorFieldName = discriminatorFieldName;
+    mSubtypes = subtypes;
+  }
+
+  /**
+   * Makes the generated serializer for this class write the discriminator field first, as this
+   * class is registered as a subtype of a superclass.
+   */
+  public void setDiscriminator(String fieldName, String value) {
+    mDiscriminatorFieldName = fieldName;
+    mDiscriminatorValue = value;
   }
 
   @Override
@@ -53,173 +136,1856 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
       writer.emitPackage(mClassPackage);
 
       writer.emitImports(
+          "java.io.File",
+          "java.io.FileInputStream",
           "java.io.IOException",
-          "java.io.StringWriter",
+          "java.io.InputStream",
+          "java.io.OutputStream",
+          "java.io.Reader",
           "java.util.ArrayDeque",
           "java.util.ArrayList",
+          "java.util.Arrays",
+          "java.util.HashMap",
           "java.util.List",
+          "java.util.Map",
           "java.util.Queue",
+          "java.util.concurrent.ForkJoinPool",
+          "com.fasterxml.jackson.core.JsonEncoding",
           "com.fasterxml.jackson.core.JsonGenerator",
           "com.fasterxml.jackson.core.JsonParser",
           "com.fasterxml.jackson.core.JsonToken",
-          "com.instagram.common.json.JsonFactoryHolder"
+          "com.fasterxml.jackson.core.io.SerializedString",
+          "com.instagram.common.json.DoubleList",
+          "com.instagram.common.json.FieldMask",
+          "com.instagram.common.json.FloatList",
+          "com.instagram.common.json.IntList",
+          "com.instagram.common.json.JsonArrayIterator",
+          "com.instagram.common.json.JsonByteReader",
+          "com.instagram.common.json.JsonFactoryHolder",
+          "com.instagram.common.json.JsonFieldBuffer",
+          "com.instagram.common.json.JsonGeneratorPool",
+          "com.instagram.common.json.JsonObjectBytesParser",
+          "com.instagram.common.json.JsonObjectParser",
+          "com.instagram.common.json.JsonObjectPool",
+          "com.instagram.common.json.JsonParallelArrayParser",
+          "com.instagram.common.json.JsonRecordReader",
+          "com.instagram.common.json.LazyJsonObject",
+          "com.instagram.common.json.LongList",
+          "com.instagram.common.json.MappedFileInputStream",
+          "com.instagram.common.json.StringInterner"
       );
 
       writer.beginType(mInjectedClassName, "class", EnumSet.of(PUBLIC, FINAL));
 
+      writeFieldNameConstants(writer);
+
       String returnValue = mPostprocessingEnabled ?
           ("instance." + JsonType.POSTPROCESSING_METHOD_NAME + "()") : "instance";
+      final boolean hasSubtypes = !mSubtypes.isEmpty();
+      boolean parsable = !mAbstractClass || hasSubtypes;
+
+      if (hasSubtypes) {
+        writeSubtypeParsers(writer, returnValue);
+      } else if (!mAbstractClass) {
+        writer
+              .beginMethod(
+                  mClassName,
+                  "parseFromJson",
+                  EnumSet.of(PUBLIC, STATIC, FINAL),
+                  Arrays.asList("JsonParser", "jp"),
+                  Arrays.asList("IOException"))
+                .emitStatement("%s instance = new %s()", mClassName, mClassName)
+                .emitSingleLineComment("validate that we're on the right token")
+                .beginControlFlow("if (jp.getCurrentToken() != JsonToken.START_OBJECT)")
+                  .emitStatement("jp.skipChildren()")
+                  .emitStatement("return null")
+                .endControlFlow()
+                .emitWithGenerator(
+                    new JavaWriter.JavaGenerator() {
+                      @Override
+                      public void emitJava(JavaWriter writer) throws IOException {
+                        JsonParserClassData.this.writeParseLoop(writer, false);
+                      }
+                    })
+                .emitStatement("return %s", returnValue)
+              .endMethod()
+              .emitEmptyLine();
+
+        writeByteParser(writer, returnValue);
+      }
+
+      if (!mAbstractClass) {
+        writer
+              .beginMethod(
+                  mClassName,
+                  "parseInto",
+                  EnumSet.of(PUBLIC, STATIC, FINAL),
+                  Arrays.asList("JsonParser", "jp", mClassName, "instance"),
+                  Arrays.asList("IOException"))
+                .beginControlFlow("if (jp.getCurrentToken() != JsonToken.START_OBJECT)")
+                  .emitStatement("jp.skipChildren()")
+                  .emitStatement("return null")
+                .endControlFlow()
+                .beginControlFlow("if (instance == null)")
+                  .emitStatement("JsonObjectPool<%s> pool = sObjectPool", mClassName)
+                  .emitStatement("instance = pool != null ? pool.acquire() : null")
+                  .beginControlFlow("if (instance == null)")
+                    .emitStatement("return parseFromJson(jp)")
+                  .endControlFlow()
+                .endControlFlow()
+                .emitStatement("reset(instance)")
+                .emitWithGenerator(
+                    new JavaWriter.JavaGenerator() {
+                      @Override
+                      public void emitJava(JavaWriter writer) throws IOException {
+                        JsonParserClassData.this.writeParseLoop(writer, true);
+                      }
+                    })
+                .emitStatement("return %s", returnValue)
+              .endMethod()
+              .emitEmptyLine();
+
+        writer
+              .beginMethod(
+                  "void",
+                  "setObjectPool",
+                  EnumSet.of(PUBLIC, STATIC, FINAL),
+                  "JsonObjectPool<" + mClassName + ">", "pool")
+                .emitStatement("sObjectPool = pool")
+              .endMethod()
+              .emitEmptyLine();
+
+        writer
+              .beginMethod(
+                  "void",
+                  "recycle",
+                  EnumSet.of(PUBLIC, STATIC, FINAL),
+                  mClassName, "instance")
+                .emitStatement("JsonObjectPool<%s> pool = sObjectPool", mClassName)
+                .beginControlFlow("if (pool != null && instance != null)")
+                  .emitStatement("pool.release(instance)")
+                .endControlFlow()
+              .endMethod()
+              .emitEmptyLine();
+      }
+
+      if (hasSubtypes) {
+        writer
+              .beginMethod(
+                  mClassName,
+                  "parseFromJson",
+                  EnumSet.of(PUBLIC, STATIC, FINAL),
+                  Arrays.asList("JsonParser", "jp", "FieldMask", "mask"),
+                  Arrays.asList("IOException"))
+                .emitSingleLineComment(
+                    "a mask can only select the fields of one class, so it is not applied to")
+                .emitSingleLineComment("an object that may be parsed as a subtype.")
+                .emitStatement("return parseFromJson(jp)")
+              .endMethod()
+              .emitEmptyLine();
+      } else if (!mAbstractClass) {
+        writer
+              .beginMethod(
+                  mClassName,
+                  "parseFromJson",
+                  EnumSet.of(PUBLIC, STATIC, FINAL),
+                  Arrays.asList("JsonParser", "jp", "FieldMask", "mask"),
+                  Arrays.asList("IOException"))
+                .beginControlFlow("if (mask == null)")
+                  .emitStatement("return parseFromJson(jp)")
+                .endControlFlow()
+                .emitStatement("return parseMaskedFromJson(jp, mask, false)")
+              .endMethod()
+              .emitEmptyLine();
+
+        writer
+              .beginMethod(
+                  mClassName,
+                  "parseMaskedFromJson",
+                  EnumSet.of(PRIVATE, STATIC, FINAL),
+                  Arrays.asList("JsonParser", "jp", "FieldMask", "mask",
+                      "boolean", "stopWhenComplete"),
+                  Arrays.asList("IOException"))
+                .emitStatement("mask.checkOwner(FIELD_NAMES)")
+                .emitStatement("%s instance = new %s()", mClassName, mClassName)
+                .beginControlFlow("if (jp.getCurrentToken() != JsonToken.START_OBJECT)")
+                  .emitStatement("jp.skipChildren()")
+                  .emitStatement("return null")
+                .endControlFlow()
+                .emitSingleLineComment(
+                    "the slots of the selected fields that have been bound.  if there are too")
+                .emitSingleLineComment("many to track, we read the whole object.")
+                .emitStatement("int remaining = mask.size() <= 64 ? mask.size() : -1")
+                .emitStatement("long boundSlots = 0")
+                .beginControlFlow(
+                    "while (remaining != 0 && jp.nextToken() == JsonToken.FIELD_NAME)")
+                  .emitStatement("String fieldName = jp.getCurrentName()")
+                  .emitStatement("jp.nextToken()")
+                  .emitStatement("int slot = processMaskedField(instance, fieldName, jp, mask)")
+                  .emitSingleLineComment("skips the value if the field was not bound.")
+                  .emitStatement("jp.skipChildren()")
+                  .beginControlFlow(
+                      "if (remaining > 0 && slot >= 0 && (boundSlots & (1L << slot)) == 0)")
+                    .emitStatement("boundSlots |= 1L << slot")
+                    .emitStatement("remaining--")
+                  .endControlFlow()
+                .endControlFlow()
+                .beginControlFlow("if (remaining == 0 && !stopWhenComplete)")
+                  .emitSingleLineComment(
+                      "every selected field is bound, so step over the rest of the object.")
+                  .beginControlFlow("while (jp.nextToken() != JsonToken.END_OBJECT)")
+                    .emitStatement("jp.skipChildren()")
+                  .endControlFlow()
+                .endControlFlow()
+                .emitStatement("return %s", returnValue)
+              .endMethod()
+              .emitEmptyLine();
+      }
+
+      writer
+          .beginMethod(
+              "FieldMask.Builder",
+              "fieldMaskBuilder",
+              EnumSet.of(PUBLIC, STATIC, FINAL))
+            .emitStatement("return new FieldMask.Builder(FIELD_NAMES, %s)",
+                mParentInjectedClassName != null ?
+                    mParentInjectedClassName + ".fieldMaskBuilder()" : "null")
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "int",
+              "getFieldIndex",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              "String", "fieldName")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  JsonParserClassData.this.writeFieldIndexLookup(writer);
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+
+      writeEnumParsers(writer);
+      writeReadField(writer);
+
+      writer
+          .beginMethod(
+              "boolean",
+              "processSingleField",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              Arrays.asList(mClassName, "instance", "String", "fieldName", "JsonParser", "jp"),
+              Arrays.asList("IOException"))
+          .emitStatement("return processSingleField(instance, fieldName, jp, false)")
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "boolean",
+              "processSingleField",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              Arrays.asList(mClassName, "instance", "String", "fieldName", "JsonParser", "jp",
+                  "boolean", "reuse"),
+              Arrays.asList("IOException"))
+          .emitStatement("int fieldIndex = getFieldIndex(fieldName)")
+          .beginControlFlow("if (fieldIndex >= 0)")
+            .emitStatement("return processField(instance, fieldIndex, jp, null, reuse)")
+          .endControlFlow()
+          .emitStatement("return false")
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "int",
+              "processMaskedField",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              Arrays.asList(mClassName, "instance", "String", "fieldName", "JsonParser", "jp",
+                  "FieldMask", "mask"),
+              Arrays.asList("IOException"))
+          .emitStatement("int fieldIndex = getFieldIndex(fieldName)")
+          .beginControlFlow("if (fieldIndex >= 0 && fieldIndex < FIELD_NAMES.length)")
+            .beginControlFlow("if (mask.includes(fieldIndex) && " +
+                "processField(instance, fieldIndex, jp, mask.getChild(fieldIndex), false))")
+              .emitStatement("return mask.getSlot(fieldIndex)")
+            .endControlFlow()
+            .emitStatement("return -1")
+          .endControlFlow()
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  // the masks are built per class, so an inherited field is checked against the
+                  // superclass's mask.
+                  if (mParentInjectedClassName != null) {
+                    writer
+                        .beginControlFlow("if (fieldIndex >= 0)")
+                          .emitStatement("return %s.processMaskedField(" +
+                              "instance, fieldName, jp, mask.getParent())",
+                              mParentInjectedClassName)
+                        .endControlFlow();
+                  }
+                  writer.emitStatement("return -1");
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "boolean",
+              "processField",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              Arrays.asList(mClassName, "instance", "int", "fieldIndex", "JsonParser", "jp",
+                  "FieldMask", "childMask", "boolean", "reuse"),
+              Arrays.asList("IOException"))
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  JsonParserClassData.this.writeFields(messager, writer);
+                  writer.emitStatement("return false");
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "void",
+              "dropField",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              mClassName, "instance", "int", "fieldIndex")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  JsonParserClassData.this.writeDropFields(writer);
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "void",
+              "reset",
+              EnumSet.of(PUBLIC, STATIC, FINAL),
+              mClassName, "instance")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  if (mParentInjectedClassName != null) {
+                    writer.emitStatement("%s.reset(instance)", mParentInjectedClassName);
+                  }
+                  JsonParserClassData.this.writeResetFields(messager, writer);
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+
+      if (parsable) {
+        writeParseFromInput(writer, "inputString", "String", "inputString");
+        writeParseFromInput(writer, "inputBytes", "byte[]", "inputBytes");
+        writeParseFromInput(writer, "inputBytes, offset, length",
+            "byte[]", "inputBytes", "int", "offset", "int", "length");
+        writeParseFromInput(writer, "inputStream", "InputStream", "inputStream");
+        writeParseFromInput(writer, "reader", "Reader", "reader");
+        writeParseFromFile(writer);
+        if (!hasSubtypes) {
+          writeParseFromInput(writer, true, "inputString", "String", "inputString");
+          writeParseFromInput(writer, true, "inputBytes", "byte[]", "inputBytes");
+          writeParseFromInput(writer, true, "inputStream", "InputStream", "inputStream");
+        }
+        writeParseArrayIterators(writer);
+        writeParseArrayParallel(writer);
+        writeParseRecords(writer);
+      }
+
+      writer
+            .beginMethod(
+                "void",
+                "serializeToJson",
+                EnumSet.of(PUBLIC, STATIC, FINAL),
+                Arrays.asList("JsonGenerator", "generator",
+                    mClassName, "object",
+                    "boolean", "writeStartAndEnd"),
+                Arrays.asList("IOException"))
+              .emitWithGenerator(
+                  new JavaWriter.JavaGenerator() {
+                    @Override
+                    public void emitJava(JavaWriter writer) throws IOException {
+                      JsonParserClassData.this.writeSerializeStart(writer);
+                    }
+                  })
+              .emitWithGenerator(
+                  new JavaWriter.JavaGenerator() {
+                    @Override
+                    public void emitJava(JavaWriter writer) throws IOException {
+                      JsonParserClassData.this.writeSerializeCalls(messager, writer);
+
+                      // if we have a superclass, we need to call its serialize method.
+                      if (mParentInjectedClassName != null) {
+                        writer.emitStatement(mParentInjectedClassName +
+                                ".serializeToJson(generator, object, false)");
+                      }
+
+                    }
+                  })
+              .beginControlFlow("if (writeStartAndEnd)")
+                .emitStatement("generator.writeEndObject()")
+              .endControlFlow()
+            .endMethod()
+            .emitEmptyLine();
+
+      writeEstimateMethods(writer);
+
+      if (parsable) {
+        writer
+            .beginMethod(
+                "String",
+                "serializeToJson",
+                EnumSet.of(PUBLIC, STATIC, FINAL),
+                Arrays.asList(mClassName, "object"),
+                Arrays.asList("IOException"))
+            .emitStatement("JsonGeneratorPool pool = JsonGeneratorPool.acquire()")
+            .beginControlFlow("try")
+              .emitStatement("serializeToJson(pool.getStringGenerator(), object, true)")
+              .emitStatement("return pool.finishString()")
+            .nextControlFlow("finally")
+              .emitStatement("pool.release()")
+            .endControlFlow()
+            .endMethod()
+            .emitEmptyLine();
+
+        writer
+            .beginMethod(
+                "byte[]",
+                "serializeToJsonBytes",
+                EnumSet.of(PUBLIC, STATIC, FINAL),
+                Arrays.asList(mClassName, "object"),
+                Arrays.asList("IOException"))
+            .emitStatement("JsonGeneratorPool pool = JsonGeneratorPool.acquire()")
+            .beginControlFlow("try")
+              .emitStatement(
+                  "serializeToJson(pool.getBytesGenerator(estimateSerializedSize(object)), " +
+                      "object, true)")
+              .emitStatement("return pool.finishBytes()")
+            .nextControlFlow("finally")
+              .emitStatement("pool.release()")
+            .endControlFlow()
+            .endMethod()
+            .emitEmptyLine();
+
+        writer
+            .beginMethod(
+                "void",
+                "serializeToJson",
+                EnumSet.of(PUBLIC, STATIC, FINAL),
+                Arrays.asList("OutputStream", "outputStream", mClassName, "object"),
+                Arrays.asList("IOException"))
+            .emitStatement(
+                "JsonGenerator generator = " +
+                    "JsonFactoryHolder.APP_FACTORY.createGenerator(" +
+                    "outputStream, JsonEncoding.UTF8)")
+            // the stream belongs to the caller, so closing the generator only flushes it.
+            .emitStatement("generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)")
+            .beginControlFlow("try")
+              .emitStatement("serializeToJson(generator, object, true)")
+            .nextControlFlow("finally")
+              .emitStatement("generator.close()")
+            .endControlFlow()
+            .endMethod()
+            .emitEmptyLine();
+      }
+
+      writer.endType();
+    } catch (IOException ex) {
+      Console.error(
+          messager, "IOException while generating %s: %s",
+          mInjectedClassName, ex.toString());
+    }
+
+    return sw.toString();
+  }
+
+  /**
+   * This writes a parseFromJson overload that creates a parser on the given input, parses an
+   * object from it and closes the parser.  Byte input is read as UTF-8 directly by the parser.
+   *
+   * @param createParserArgs the arguments passed to
+   * {@link com.fasterxml.jackson.core.JsonFactory#createParser}.
+   * @param parameters alternating parameter types and names.
+   */
+  private void writeParseFromInput(
+      JavaWriter writer, String createParserArgs, String... parameters) throws IOException {
+    writeParseFromInput(writer, false, createParserArgs, parameters);
+  }
+
+  /**
+   * This writes a {@code parseFromJson} overload as above.  If {@code masked} is true, the overload
+   * also takes a {@link com.instagram.common.json.FieldMask}, and stops reading the input as soon
+   * as every selected field is bound.  That is safe because the parser is closed right after.
+   */
+  private void writeParseFromInput(
+      JavaWriter writer, boolean masked, String createParserArgs, String... parameters)
+      throws IOException {
+    List<String> parameterList = new ArrayList<String>(Arrays.asList(parameters));
+    if (masked) {
+      parameterList.add("FieldMask");
+      parameterList.add("mask");
+    }
+    writer
+        .beginMethod(
+            mClassName,
+            "parseFromJson",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            parameterList,
+            Arrays.asList("IOException"));
+    if (!masked && hasByteParser() && readsAllFieldsFromBytes() &&
+        parameters[0].equals("byte[]")) {
+      String readerArgs = parameters.length == 2 ?
+          parameters[1] + ", 0, " + parameters[1] + ".length" :
+          createParserArgs;
+      writer
+          .beginControlFlow("try")
+            .emitStatement("return parseFromBytes(new JsonByteReader(%s))", readerArgs)
+          .nextControlFlow("catch (JsonByteReader.FallbackException ex)")
+            .emitSingleLineComment("jackson parses the input instead, and reports any errors.")
+          .endControlFlow();
+    }
+    writer
+          .emitStatement(
+              "JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(%s)", createParserArgs)
+          .beginControlFlow("try")
+            .emitStatement("jp.nextToken()")
+            .emitStatement(masked ?
+                "return mask == null ? parseFromJson(jp) : parseMaskedFromJson(jp, mask, true)" :
+                "return parseFromJson(jp)")
+          .nextControlFlow("finally")
+            .emitStatement("jp.close()")
+          .endControlFlow()
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * This writes {@code parseFromFile}, which reads a file through a
+   * {@link com.instagram.common.json.MappedFileInputStream}, so that the file is not copied onto
+   * the heap.
+   */
+  private void writeParseFromFile(JavaWriter writer) throws IOException {
+    writer
+        .beginMethod(
+            mClassName,
+            "parseFromFile",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            Arrays.asList("File", "file"),
+            Arrays.asList("IOException"))
+          .emitStatement("MappedFileInputStream inputStream = new MappedFileInputStream(file)")
+          .beginControlFlow("try")
+            .emitStatement("return parseFromJson(inputStream)")
+          .nextControlFlow("finally")
+            .emitSingleLineComment(
+                "the parser has usually closed the stream already, which does no harm.")
+            .emitStatement("inputStream.close()")
+          .endControlFlow()
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * Returns true if this class has a {@code parseFromBytes} method.  A class with subtypes has
+   * none, since its objects are bound by the subtypes' helpers.
+   */
+  private boolean hasByteParser() {
+    return !mAbstractClass && mSubtypes.isEmpty();
+  }
+
+  /**
+   * Returns true if the byte reader binds every field declared by this class.  Otherwise, the
+   * class is bound by jackson alone, since handing some of its fields to jackson one by one costs
+   * more than parsing the whole object with jackson.  Inherited fields are read by the helper of
+   * the class that declares them.
+   */
+  private boolean readsAllFieldsFromBytes() {
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      if (!isReadByByteReader(entry.getValue())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * This writes {@code parseFromBytes}, which binds an object read by a
+   * {@link com.instagram.common.json.JsonByteReader}.  If the reader binds every field of the
+   * class, the field name is matched on its UTF-8 bytes and the field is read with
+   * {@code readField}.  The value of an inherited field the reader does not handle, or of a field
+   * whose value is not in the form the reader handles, is bound by jackson with
+   * {@code processField}.  Otherwise, the whole object is bound by jackson.
+   */
+  private void writeByteParser(JavaWriter writer, String returnValue) throws IOException {
+    writer
+        .beginMethod(
+            mClassName,
+            "parseFromBytes",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            Arrays.asList("JsonByteReader", "reader"),
+            Arrays.asList("IOException"));
+    if (!readsAllFieldsFromBytes()) {
+      writer
+            .emitStatement("JsonParser jp = reader.createValueParser()")
+            .beginControlFlow("try")
+              .emitStatement("return parseFromJson(jp)")
+            .nextControlFlow("finally")
+              .emitStatement("jp.close()")
+            .endControlFlow()
+          .endMethod()
+          .emitEmptyLine();
+      return;
+    }
+    writer
+          .beginControlFlow("if (!reader.beginObject())")
+            .emitStatement("return null")
+          .endControlFlow()
+          .emitStatement("%s instance = new %s()", mClassName, mClassName)
+          .beginControlFlow("while (reader.nextField())")
+            .emitStatement("int fieldIndex = getFieldIndex(" +
+                "reader.getBytes(), reader.getNameOffset(), reader.getNameLength())")
+            .beginControlFlow("if (fieldIndex < 0)")
+              .emitStatement("reader.skipValue()")
+            .nextControlFlow("else if (!readField(instance, fieldIndex, reader))")
+              .emitStatement("JsonParser jp = reader.createValueParser()")
+              .beginControlFlow("try")
+                .emitStatement("processField(instance, fieldIndex, jp, null, false)")
+              .nextControlFlow("finally")
+                .emitStatement("jp.close()")
+              .endControlFlow()
+            .endControlFlow()
+          .endControlFlow()
+          .emitStatement("return %s", returnValue)
+        .endMethod()
+        .emitEmptyLine();
+
+    final List<String> fieldNames = new ArrayList<String>();
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      fieldNames.add(entry.getValue().getFieldName());
+    }
+    for (InheritedField inheritedField : mInheritedFields) {
+      fieldNames.add(inheritedField.mFieldName);
+    }
+    writer
+        .beginMethod(
+            "int",
+            "getFieldIndex",
+            EnumSet.of(PRIVATE, STATIC, FINAL),
+            "byte[]", "bytes", "int", "offset", "int", "length")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  FieldNameSwitch.forUtf8Bytes("bytes", "offset", "length", fieldNames)
+                      .writeSwitch(writer);
+                }
+              })
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * This writes {@code readField}, which binds the value of a field read by a
+   * {@link com.instagram.common.json.JsonByteReader}, and returns false without reading anything
+   * if the reader does not handle the field or its value.  An inherited field is read by the
+   * helper of the class that declares it, which is why this is public.
+   */
+  private void writeReadField(JavaWriter writer) throws IOException {
+    writer.beginMethod(
+        "boolean",
+        "readField",
+        EnumSet.of(PUBLIC, STATIC, FINAL),
+        Arrays.asList(mClassName, "instance", "int", "fieldIndex", "JsonByteReader", "reader"),
+        Arrays.asList("IOException"));
+    int fieldIndex = 0;
+    boolean anyCases = false;
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      if (isReadByByteReader(entry.getValue())) {
+        if (!anyCases) {
+          writer.beginControlFlow("switch (fieldIndex)");
+          anyCases = true;
+        }
+        writer.beginControlFlow("case " + fieldIndex + ":");
+        writeByteReaderField(writer, entry.getKey(), entry.getValue());
+        writer.endControlFlow();
+      }
+      fieldIndex++;
+    }
+    for (int ix = 0; ix < mInheritedFields.size(); ix++) {
+      if (!anyCases) {
+        writer.beginControlFlow("switch (fieldIndex)");
+        anyCases = true;
+      }
+      writer.beginControlFlow("case " + fieldIndex + ":")
+            .emitStatement("return %s.readField(instance, %s, reader)",
+                mInheritedFields.get(ix).mInjectedClassName, getInheritedFieldIndex(ix))
+          .endControlFlow();
+      fieldIndex++;
+    }
+    if (anyCases) {
+      writer.endControlFlow();
+    }
+    writer
+          .emitStatement("return false")
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * Returns true if the byte reader binds this field itself, rather than handing it to jackson.
+   * That is the case for scalars, strings, enums, sub-objects, lazy sub-objects, arrays and lists
+   * of primitives, and lists of strings, enums or sub-objects, unless they are parsed or assigned
+   * by custom code, interned, or of a type with subtypes.
+   */
+  private static boolean isReadByByteReader(TypeData data) {
+    if (!StringUtil.isNullOrEmpty(data.getValueExtractFormatter()) ||
+        !StringUtil.isNullOrEmpty(data.getAssignmentFormatter()) ||
+        data.isIntern()) {
+      return false;
+    }
+    switch (data.getCollectionType()) {
+      case NOT_A_COLLECTION:
+        if (data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT) {
+          return !data.isParsableTypePolymorphic();
+        }
+        return data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT ||
+            sJavaTypes.containsKey(data.getParseType());
+      case LIST:
+      case QUEUE:
+        return data.getParseType() == TypeUtils.ParseType.STRING ||
+            data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT ||
+            (data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT &&
+                !data.isParsableTypePolymorphic());
+      case ARRAY:
+      case INT_LIST:
+      case LONG_LIST:
+      case FLOAT_LIST:
+      case DOUBLE_LIST:
+      case LAZY:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * This writes the body of a case of {@code readField}, which returns false without reading
+   * anything if the value is not in a form the reader handles.
+   */
+  private void writeByteReaderField(JavaWriter writer, String javaFieldName, TypeData data)
+      throws IOException {
+    if (data.getCollectionType() == TypeUtils.CollectionType.LAZY) {
+      // the sub-object is kept as the bytes it was read from.
+      writer
+          .emitStatement("instance.%s = LazyJsonObject.capture(reader, %s.PARSER)",
+              javaFieldName, getSubobjectHelper(data))
+          .emitStatement("return true");
+      return;
+    }
+    if (data.getCollectionType() != TypeUtils.CollectionType.NOT_A_COLLECTION) {
+      writer
+          .beginControlFlow("if (reader.readNull())")
+            .emitStatement("instance.%s = null", javaFieldName)
+            .emitStatement("return true")
+          .endControlFlow()
+          .beginControlFlow("if (!reader.beginArray())")
+            .emitStatement("return false")
+          .endControlFlow();
+      String primitiveListType = mapCollectionTypeToPrimitiveListType(data.getCollectionType());
+      String elementType = data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT ||
+          data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT ?
+              data.getParsableType() : sJavaTypes.get(data.getParseType());
+      if (data.getCollectionType() == TypeUtils.CollectionType.ARRAY) {
+        writer
+            .emitStatement("%s[] buffer = new %s[%d]",
+                elementType, elementType, PRIMITIVE_ARRAY_INITIAL_CAPACITY)
+            .emitStatement("int count = 0");
+      } else if (primitiveListType != null) {
+        writer.emitStatement("%s results = new %s()", primitiveListType, primitiveListType);
+      } else {
+        writer.emitStatement("%s<%s> results = new %s<%s>()",
+            mapCollectionTypeToInterfaceType(data.getCollectionType()), elementType,
+            mapCollectionTypeToConcreteType(data.getCollectionType()), elementType);
+      }
+      writer.beginControlFlow("while (reader.nextElement())");
+      String value = writeByteReaderElement(writer, javaFieldName, data);
+      if (data.getCollectionType() == TypeUtils.CollectionType.ARRAY) {
+        writer
+              .beginControlFlow("if (count == buffer.length)")
+                .emitStatement("buffer = Arrays.copyOf(buffer, count * 2)")
+              .endControlFlow()
+              .emitStatement("buffer[count++] = %s", value)
+            .endControlFlow()
+            .emitStatement("instance.%s = " +
+                "count == buffer.length ? buffer : Arrays.copyOf(buffer, count)", javaFieldName);
+      } else {
+        if (value != null) {
+          writer.emitStatement("results.add(%s)", value);
+        }
+        writer
+            .endControlFlow()
+            .emitStatement("instance.%s = results", javaFieldName);
+      }
+      writer.emitStatement("return true");
+      return;
+    }
+
+    // a null is bound as null by both mappings, except for a coerced number or boolean.
+    if (!isPrimitive(data.getParseType()) &&
+        data.getParseType() != TypeUtils.ParseType.PARSABLE_OBJECT &&
+        (data.getParseType() == TypeUtils.ParseType.STRING ||
+            data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT ||
+            data.getMapping() == JsonField.TypeMapping.EXACT)) {
+      writer
+          .beginControlFlow("if (reader.readNull())")
+            .emitStatement("instance.%s = null", javaFieldName)
+            .emitStatement("return true")
+          .endControlFlow();
+    }
+
+    String value;
+    switch (data.getParseType()) {
+      case BOOLEAN:
+      case BOOLEAN_OBJECT:
+        writer
+            .emitStatement("Boolean value = reader.readBoolean()")
+            .beginControlFlow("if (value == null)")
+              .emitStatement("return false")
+            .endControlFlow();
+        value = "value";
+        break;
+      case STRING:
+        writer
+            .emitStatement("String value = reader.readString()")
+            .beginControlFlow("if (value == null)")
+              .emitStatement("return false")
+            .endControlFlow();
+        value = "value";
+        break;
+      case ENUM_OBJECT:
+        writer
+            .beginControlFlow("if (!reader.nextAsciiString())")
+              .emitStatement("return false")
+            .endControlFlow()
+            .emitStatement("int index = %s", getByteReaderEnumIndex(javaFieldName));
+        value = "index >= 0 ? " + getEnumValuesConstant(javaFieldName) + "[index] : null";
+        break;
+      case PARSABLE_OBJECT:
+        value = getByteReaderSubobject(data);
+        break;
+      default:
+        String kind = sByteReaderNumberKinds.get(data.getParseType());
+        writer
+            .beginControlFlow("if (!reader.next" + kind + "())")
+              .emitStatement("return false")
+            .endControlFlow();
+        value = StrFormat.createStringFormatter(sByteReaderNumberValues.get(data.getParseType()))
+            .addParam("value", "reader.get" + kind + "Value()")
+            .format();
+    }
+    writer
+        .emitStatement("instance.%s = %s", javaFieldName, value)
+        .emitStatement("return true");
+  }
+
+  /**
+   * This writes the code that reads an element of an array, inside the loop over its elements.
+   * Some of the array has already been read, so the whole input is handed to jackson if the
+   * element is not in a form the reader handles.  Returns the value of the element, or null if
+   * the code adds it to {@code results} itself.
+   */
+  private String writeByteReaderElement(JavaWriter writer, String javaFieldName, TypeData data)
+      throws IOException {
+    switch (data.getParseType()) {
+      case STRING:
+        // jackson's handling of other elements depends on the mapping.
+        writer
+            .emitStatement("String parsed = reader.readString()")
+            .beginControlFlow("if (parsed == null)")
+              .emitStatement("throw JsonByteReader.fallback()")
+            .endControlFlow();
+        return "parsed";
+      case ENUM_OBJECT:
+        // jackson skips nulls and constants that the enum does not have.
+        writer
+            .beginControlFlow("if (reader.readNull())")
+              .emitStatement("continue")
+            .endControlFlow()
+            .beginControlFlow("if (!reader.nextAsciiString())")
+              .emitStatement("throw JsonByteReader.fallback()")
+            .endControlFlow()
+            .emitStatement("int index = %s", getByteReaderEnumIndex(javaFieldName))
+            .beginControlFlow("if (index >= 0)")
+              .emitStatement("results.add(%s[index])", getEnumValuesConstant(javaFieldName))
+            .endControlFlow();
+        return null;
+      case PARSABLE_OBJECT:
+        writer
+            .emitStatement("%s parsed = %s", data.getParsableType(), getByteReaderSubobject(data))
+            .beginControlFlow("if (parsed != null)")
+              .emitStatement("results.add(parsed)")
+            .endControlFlow();
+        return null;
+      case BOOLEAN:
+        writer
+            .emitStatement("Boolean parsed = reader.readBoolean()")
+            .beginControlFlow("if (parsed == null)")
+              .emitStatement("throw JsonByteReader.fallback()")
+            .endControlFlow();
+        return "parsed";
+      default:
+        String kind = sByteReaderNumberKinds.get(data.getParseType());
+        writer
+            .beginControlFlow("if (!reader.next" + kind + "())")
+              .emitStatement("throw JsonByteReader.fallback()")
+            .endControlFlow();
+        return StrFormat.createStringFormatter(sByteReaderNumberValues.get(data.getParseType()))
+            .addParam("value", "reader.get" + kind + "Value()")
+            .format();
+    }
+  }
+
+  private static String getByteReaderEnumIndex(String javaFieldName) {
+    return getEnumIndexMethod(javaFieldName) +
+        "(reader.getBytes(), reader.getValueOffset(), reader.getValueLength())";
+  }
+
+  private static String getByteReaderSubobject(TypeData data) {
+    return data.getParsableTypeParserClass() +
+        JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX + ".parseFromBytes(reader)";
+  }
+
+  /**
+   * This writes the {@code parseFromJson} method for a class with subtypes, which reads the
+   * discriminator and binds the object as the subtype it selects.  If the discriminator is the
+   * first field, as it is in the json we write, the object is bound straight from the parser.
+   * Otherwise, the fields before it are buffered, and bound once the subtype is known.
+   */
+  private void writeSubtypeParsers(JavaWriter writer, String returnValue) throws IOException {
+    final String discriminator = JavaWriter.stringLiteral(mSubtypeDiscriminatorFieldName);
+    writer
+        .beginMethod(
+            mClassName,
+            "parseFromJson",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            Arrays.asList("JsonParser", "jp"),
+            Arrays.asList("IOException"))
+          .beginControlFlow("if (jp.getCurrentToken() != JsonToken.START_OBJECT)")
+            .emitStatement("jp.skipChildren()")
+            .emitStatement("return null")
+          .endControlFlow()
+          .emitStatement("JsonParser buffered = null")
+          .beginControlFlow("if (jp.nextToken() == JsonToken.FIELD_NAME && " +
+              "!" + discriminator + ".equals(jp.getCurrentName()))")
+            .emitStatement(
+                "buffered = JsonFieldBuffer.bufferFieldsUntil(jp, %s)", discriminator)
+          .endControlFlow()
+          .emitStatement("int subtype = -1")
+          .beginControlFlow("if (jp.getCurrentToken() == JsonToken.FIELD_NAME)")
+            .beginControlFlow("if (jp.nextToken() == JsonToken.VALUE_STRING)")
+              .emitStatement("subtype = getSubtypeIndex(" +
+                  "jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength())")
+            .endControlFlow()
+          .endControlFlow()
+          .beginControlFlow("try")
+            .emitStatement("return parseSubtypeFromJson(subtype, buffered, jp)")
+          .nextControlFlow("finally")
+            .beginControlFlow("if (buffered != null)")
+              .emitStatement("buffered.close()")
+            .endControlFlow()
+          .endControlFlow()
+        .endMethod()
+        .emitEmptyLine();
+
+    final List<String> values = new ArrayList<String>();
+    for (Subtype subtype : mSubtypes) {
+      values.add(subtype.mValue);
+    }
+    writer
+        .beginMethod(
+            "int",
+            "getSubtypeIndex",
+            EnumSet.of(PRIVATE, STATIC, FINAL),
+            "char[]", "chars", "int", "offset", "int", "length")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  new FieldNameSwitch("chars", "offset", "length", values).writeSwitch(writer);
+                }
+              })
+        .endMethod()
+        .emitEmptyLine();
+
+    // jp is on the value of the discriminator, or on the end of the object if there is none.
+    writer
+        .beginMethod(
+            mClassName,
+            "parseSubtypeFromJson",
+            EnumSet.of(PRIVATE, STATIC, FINAL),
+            Arrays.asList("int", "subtype", "JsonParser", "buffered", "JsonParser", "jp"),
+            Arrays.asList("IOException"))
+          .beginControlFlow("switch (subtype)");
+    for (int ix = 0; ix < mSubtypes.size(); ix++) {
+      Subtype subtype = mSubtypes.get(ix);
+      writer.beginControlFlow("case " + ix + ":");
+      writeSubtypeBinding(writer, subtype.mClassName, subtype.mInjectedClassName,
+          subtype.mPostprocessingEnabled ?
+              "instance." + JsonType.POSTPROCESSING_METHOD_NAME + "()" : "instance");
+      writer.endControlFlow();
+    }
+    writer.endControlFlow();
+    if (mAbstractClass) {
+      writer
+          .emitSingleLineComment("there is no class to bind the object to, so skip the rest of it.")
+          .beginControlFlow("if (jp.getCurrentToken() != JsonToken.END_OBJECT)")
+            .emitStatement("jp.skipChildren()")
+            .beginControlFlow("while (jp.nextToken() != JsonToken.END_OBJECT)")
+              .emitStatement("jp.skipChildren()")
+            .endControlFlow()
+          .endControlFlow()
+          .emitStatement("return null");
+    } else {
+      writeSubtypeBinding(writer, mClassName, mInjectedClassName, returnValue);
+    }
+    writer
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * This writes the code that binds an object to a new instance of {@code className}, first from
+   * the buffered fields, if any, and then from the fields left in {@code jp}.
+   */
+  private static void writeSubtypeBinding(
+      JavaWriter writer, String className, String injectedClassName, String returnValue)
+      throws IOException {
+    writer
+        .emitStatement("%s instance = new %s()", className, className)
+        .beginControlFlow("if (buffered != null)")
+          .beginControlFlow("while (buffered.nextToken() == JsonToken.FIELD_NAME)")
+            .emitStatement("String fieldName = buffered.getCurrentName()")
+            .emitStatement("buffered.nextToken()")
+            .emitStatement(
+                "%s.processSingleField(instance, fieldName, buffered)", injectedClassName)
+            .emitStatement("buffered.skipChildren()")
+          .endControlFlow()
+        .endControlFlow()
+        .beginControlFlow("if (jp.getCurrentToken() != JsonToken.END_OBJECT)")
+          .emitStatement("jp.skipChildren()")
+          .beginControlFlow("while (jp.nextToken() == JsonToken.FIELD_NAME)")
+            .emitStatement("String fieldName = jp.getCurrentName()")
+            .emitStatement("jp.nextToken()")
+            .emitStatement("%s.processSingleField(instance, fieldName, jp)", injectedClassName)
+            .emitStatement("jp.skipChildren()")
+          .endControlFlow()
+        .endControlFlow()
+        .emitStatement("return %s", returnValue);
+  }
+
+  /**
+   * This writes the start of {@code serializeToJson}.  A class with subtypes hands an instance of
+   * a subtype to the subtype's serializer.  That is only done for a whole object, since the
+   * subtype's serializer calls back with {@code writeStartAndEnd} false for the inherited fields.
+   * A class registered as a subtype writes its discriminator first, so the parser can dispatch
+   * without buffering.
+   */
+  private void writeSerializeStart(JavaWriter writer) throws IOException {
+    if (!mSubtypes.isEmpty()) {
+      writer.beginControlFlow("if (writeStartAndEnd)");
+      for (Subtype subtype : mSubtypes) {
+        writer
+            .beginControlFlow("if (object instanceof " + subtype.mClassName + ")")
+              .emitStatement("%s.serializeToJson(generator, (%s) object, true)",
+                  subtype.mInjectedClassName, subtype.mClassName)
+              .emitStatement("return")
+            .endControlFlow();
+      }
+      writer.endControlFlow();
+    }
+
+    writer
+        .beginControlFlow("if (writeStartAndEnd)")
+          .emitStatement("generator.writeStartObject()");
+    if (mDiscriminatorFieldName != null) {
+      writer
+          .emitStatement("generator.writeFieldName(DISCRIMINATOR_FIELD_NAME)")
+          .emitStatement("generator.writeString(DISCRIMINATOR_VALUE)");
+    }
+    writer.endControlFlow();
+  }
+
+  /**
+   * This writes {@code estimateSerializedSize}, which returns roughly how many bytes the
+   * serializer writes for an object, and {@code estimateFieldsSize}, which covers the fields
+   * without the braces and is what a subclass adds for its inherited fields.  The estimate counts
+   * each field name, the length of each string, and a fixed size for each number.  It makes no
+   * allowance for escaped or non-ascii characters, so it is only meant for sizing buffers.
+   */
+  private void writeEstimateMethods(JavaWriter writer) throws IOException {
+    writer.beginMethod("int", "estimateSerializedSize", EnumSet.of(PUBLIC, STATIC, FINAL),
+        mClassName, "object");
+    for (Subtype subtype : mSubtypes) {
+      writer
+          .beginControlFlow("if (object instanceof " + subtype.mClassName + ")")
+            .emitStatement("return %s.estimateSerializedSize((%s) object)",
+                subtype.mInjectedClassName, subtype.mClassName)
+          .endControlFlow();
+    }
+    // the braces, and the discriminator if this class is a subtype.
+    int startAndEnd = 2;
+    if (mDiscriminatorFieldName != null) {
+      startAndEnd += mDiscriminatorFieldName.length() + mDiscriminatorValue.length() + 6;
+    }
+    writer
+        .emitStatement("return %d + estimateFieldsSize(object)", startAndEnd)
+        .endMethod()
+        .emitEmptyLine();
+
+    writer.beginMethod("int", "estimateFieldsSize", EnumSet.of(PUBLIC, STATIC, FINAL),
+        mClassName, "object");
+    if (mParentInjectedClassName != null) {
+      writer.emitStatement("int size = %s.estimateFieldsSize(object)", mParentInjectedClassName);
+    } else {
+      writer.emitStatement("int size = 0");
+    }
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      writeEstimateField(writer, entry.getKey(), entry.getValue());
+    }
+    writer
+        .emitStatement("return size")
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  private void writeEstimateField(JavaWriter writer, String fieldName, TypeData data)
+      throws IOException {
+    String field = "object." + fieldName;
+    // the quoted name, the colon and the comma.
+    int nameSize = data.getFieldName().length() + 4;
+    // primitives are always written, unless they omit default values.
+    boolean conditional = data.getCollectionType() != TypeUtils.CollectionType.NOT_A_COLLECTION ||
+        data.isOmitDefault() || !isPrimitive(data.getParseType());
+    if (conditional) {
+      writer.beginControlFlow("if (" + getSerializeCondition(fieldName, data) + ")");
+    }
+
+    int fixedSize = getFixedValueSize(data);
+    String elementType = data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT ||
+        data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT ?
+        data.getParsableType() : sJavaTypes.get(data.getParseType());
+    switch (data.getCollectionType()) {
+      case NOT_A_COLLECTION:
+        writer.emitStatement("size += %d + %s", nameSize,
+            fixedSize >= 0 ? Integer.toString(fixedSize) : getValueSizeEstimate(data, field));
+        break;
+      case LAZY:
+        // the retained json is not looked at, since that would mean taking its lock.
+        writer.emitStatement("size += %d", nameSize + LAZY_OBJECT_SIZE_ESTIMATE);
+        break;
+      case ARRAY:
+        writer.emitStatement(
+            "size += %d + %s.length * %d", nameSize + 2, field, fixedSize + 1);
+        break;
+      case MAP:
+        writer
+            .emitStatement("size += %d", nameSize + 2)
+            .beginControlFlow("for (Map.Entry<String, " + elementType + "> element : " +
+                field + ".entrySet())")
+              .emitStatement("size += element.getKey().length() + 4")
+              .emitStatement("size += element.getValue() == null ? 4 : %s",
+                  fixedSize >= 0 ?
+                      Integer.toString(fixedSize) :
+                      getValueSizeEstimate(data, "element.getValue()"))
+            .endControlFlow();
+        break;
+      default:
+        if (fixedSize >= 0) {
+          // primitive lists have no nulls, and a null boxed element is written as nothing.
+          writer.emitStatement(
+              "size += %d + %s.size() * %d", nameSize + 2, field, fixedSize + 1);
+          break;
+        }
+        writer
+            .emitStatement("size += %d", nameSize + 2)
+            .beginControlFlow("for (" + elementType + " element : (" +
+                mapCollectionTypeToInterfaceType(data.getCollectionType()) + "<" +
+                elementType + ">) " + field + ")")
+              .beginControlFlow("if (element != null)")
+                .emitStatement("size += %s + 1", getValueSizeEstimate(data, "element"))
+              .endControlFlow()
+            .endControlFlow();
+    }
+
+    if (conditional) {
+      writer.endControlFlow();
+    }
+  }
+
+  private static boolean isPrimitive(TypeUtils.ParseType parseType) {
+    switch (parseType) {
+      case BOOLEAN:
+      case INTEGER:
+      case LONG:
+      case FLOAT:
+      case DOUBLE:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Returns the number of bytes to count for each value of a field, or -1 if that depends on the
+   * value.
+   */
+  private static int getFixedValueSize(TypeData data) {
+    if (!StringUtil.isNullOrEmpty(data.getSerializeCodeFormatter())) {
+      return CUSTOM_VALUE_SIZE_ESTIMATE;
+    }
+    Integer size = sValueSizeEstimates.get(data.getParseType());
+    return size != null ? size : -1;
+  }
+
+  /**
+   * Returns an expression for the number of bytes to count for {@code value}, which is not null.
+   */
+  private static String getValueSizeEstimate(TypeData data, String value) {
+    switch (data.getParseType()) {
+      case STRING:
+        return value + ".length() + 2";
+      case ENUM_OBJECT:
+        return value + ".name().length() + 2";
+      case PARSABLE_OBJECT:
+        return data.getParsableTypeParserClass() +
+            JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX +
+            ".estimateSerializedSize(" + value + ")";
+      default:
+        throw new IllegalStateException("no size estimate for " + data.getParseType());
+    }
+  }
+
+  /**
+   * This writes the {@code parseArrayIterator} methods, which return a
+   * {@link com.instagram.common.json.JsonArrayIterator} that binds the objects of a json array one
+   * at a time.  The {@link java.io.InputStream} overload owns its parser, so the caller must close
+   * the iterator if it stops before the end of the array.
+   */
+  private void writeParseArrayIterators(JavaWriter writer) throws IOException {
+    String iteratorType = "JsonArrayIterator<" + mClassName + ">";
+    writer
+        .beginMethod(
+            iteratorType,
+            "parseArrayIterator",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            "JsonParser", "jp")
+          .emitStatement("return new %s(jp, PARSER, false)", iteratorType)
+        .endMethod()
+        .emitEmptyLine();
+
+    writer
+        .beginMethod(
+            iteratorType,
+            "parseArrayIterator",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            Arrays.asList("InputStream", "inputStream"),
+            Arrays.asList("IOException"))
+          .emitStatement(
+              "JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(inputStream)")
+          .emitStatement("return new %s(jp, PARSER, true)", iteratorType)
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * This writes {@code parseArrayParallel}, which binds the objects of a json array held in bytes
+   * on the threads of a {@link java.util.concurrent.ForkJoinPool}, and returns them in order.
+   */
+  private void writeParseArrayParallel(JavaWriter writer) throws IOException {
+    writer
+        .beginMethod(
+            "List<" + mClassName + ">",
+            "parseArrayParallel",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            Arrays.asList("byte[]", "inputBytes", "ForkJoinPool", "pool"),
+            Arrays.asList("IOException"))
+          .emitStatement(
+              "return PARALLEL_PARSER.parse(inputBytes, 0, inputBytes.length, pool)")
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * This writes the {@code parseRecords} methods, which return a
+   * {@link com.instagram.common.json.JsonRecordReader} that binds a stream of json records on
+   * worker threads.
+   */
+  private void writeParseRecords(JavaWriter writer) throws IOException {
+    String readerType = "JsonRecordReader<" + mClassName + ">";
+    writer
+        .beginMethod(
+            readerType,
+            "parseRecords",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            "InputStream", "inputStream", "int", "threadCount", "boolean", "ordered")
+          .emitStatement(
+              "return new %s(inputStream, PARALLEL_PARSER, threadCount, ordered)", readerType)
+        .endMethod()
+        .emitEmptyLine();
+
+    writer
+        .beginMethod(
+            readerType,
+            "parseRecords",
+            EnumSet.of(PUBLIC, STATIC, FINAL),
+            Arrays.asList("File", "file", "int", "threadCount", "boolean", "ordered"),
+            Arrays.asList("IOException"))
+          .emitStatement(
+              "return parseRecords(new FileInputStream(file), threadCount, ordered)")
+        .endMethod()
+        .emitEmptyLine();
+  }
+
+  /**
+   * This writes a {@link com.fasterxml.jackson.core.io.SerializedString} constant for the json
+   * name of each field, and an array of them ordered by field index.
+   */
+  private void writeFieldNameConstants(JavaWriter writer) throws IOException {
+    List<String> constantNames = new ArrayList<String>();
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      String constantName = getFieldNameConstant(entry.getKey());
+      writer.emitField("SerializedString", constantName, EnumSet.of(PRIVATE, STATIC, FINAL),
+          "new SerializedString(" + JavaWriter.stringLiteral(entry.getValue().getFieldName()) +
+              ")");
+      constantNames.add(constantName);
+    }
+
+    StringBuilder fieldNames = new StringBuilder("{");
+    for (int ix = 0; ix < constantNames.size(); ix++) {
+      fieldNames.append(ix == 0 ? "\n" : ",\n").append(constantNames.get(ix));
+    }
+    fieldNames.append("}");
+    writer.emitField("SerializedString[]", "FIELD_NAMES", EnumSet.of(PRIVATE, STATIC, FINAL),
+        fieldNames.toString());
+
+    if (mDiscriminatorFieldName != null) {
+      writer
+          .emitField("SerializedString", "DISCRIMINATOR_FIELD_NAME",
+              EnumSet.of(PRIVATE, STATIC, FINAL),
+              "new SerializedString(" + JavaWriter.stringLiteral(mDiscriminatorFieldName) + ")")
+          .emitField("SerializedString", "DISCRIMINATOR_VALUE",
+              EnumSet.of(PRIVATE, STATIC, FINAL),
+              "new SerializedString(" + JavaWriter.stringLiteral(mDiscriminatorValue) + ")");
+    }
+
+    if (!mInheritedFields.isEmpty()) {
+      StringBuilder allFieldNames = new StringBuilder("{");
+      for (String constantName : constantNames) {
+        allFieldNames.append(allFieldNames.length() == 1 ? "\n" : ",\n").append(constantName);
+      }
+      for (InheritedField inheritedField : mInheritedFields) {
+        allFieldNames.append(allFieldNames.length() == 1 ? "\n" : ",\n")
+            .append("new SerializedString(")
+            .append(JavaWriter.stringLiteral(inheritedField.mFieldName))
+            .append(")");
+      }
+      allFieldNames.append("}");
+      writer.emitField("SerializedString[]", "ALL_FIELD_NAMES",
+          EnumSet.of(PRIVATE, STATIC, FINAL), allFieldNames.toString());
+
+      // the index of each inherited field in the helper of the class that declares it.  these are
+      // looked up when this class is loaded, since that class may have been compiled separately.
+      for (int ix = 0; ix < mInheritedFields.size(); ix++) {
+        InheritedField inheritedField = mInheritedFields.get(ix);
+        writer.emitField("int", getInheritedFieldIndex(ix), EnumSet.of(PRIVATE, STATIC, FINAL),
+            inheritedField.mInjectedClassName + ".getFieldIndex(" +
+                JavaWriter.stringLiteral(inheritedField.mFieldName) + ")");
+      }
+    }
+    writer.emitEmptyLine();
+
+    if (!mAbstractClass || !mSubtypes.isEmpty()) {
+      writer.emitField("JsonObjectBytesParser<" + mClassName + ">", "PARSER",
+          EnumSet.of(PUBLIC, STATIC, FINAL),
+          "new JsonObjectBytesParser<" + mClassName + ">() {\n" +
+              "  @Override\n" +
+              "  public " + mClassName + " parseFromJson(JsonParser jp) throws IOException {\n" +
+              "    return " + mInjectedClassName + ".parseFromJson(jp);\n" +
+              "  }\n" +
+              "\n" +
+              "  @Override\n" +
+              "  public " + mClassName + " parseFromJson(byte[] bytes, int offset, int length)\n" +
+              "      throws IOException {\n" +
+              "    return " + mInjectedClassName + ".parseFromJson(bytes, offset, length);\n" +
+              "  }\n" +
+              "}")
+          .emitEmptyLine();
+
+      writer.emitField("JsonParallelArrayParser<" + mClassName + ">", "PARALLEL_PARSER",
+          EnumSet.of(PRIVATE, STATIC, FINAL),
+          "new JsonParallelArrayParser<" + mClassName + ">(PARSER) {\n" +
+              "  @Override\n" +
+              "  protected " + mClassName +
+              " parseElement(byte[] bytes, int offset, int length)\n" +
+              "      throws IOException {\n" +
+              "    return " + mInjectedClassName + ".parseFromJson(bytes, offset, length);\n" +
+              "  }\n" +
+              "}")
+          .emitEmptyLine();
+    }
+
+    if (!mAbstractClass) {
+      writer.emitField("JsonObjectPool<" + mClassName + ">", "sObjectPool",
+          EnumSet.of(PRIVATE, STATIC, VOLATILE))
+          .emitEmptyLine();
+    }
+
+    // the size of the last map parsed for each map field, used to size the next one.  updates may
+    // race, but any value is a valid hint.
+    boolean hasMapFields = false;
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      if (entry.getValue().getCollectionType() == TypeUtils.CollectionType.MAP) {
+        writer.emitField("int", getMapSizeHint(entry.getKey()), EnumSet.of(PRIVATE, STATIC));
+        hasMapFields = true;
+      }
+    }
+    if (hasMapFields) {
+      writer.emitEmptyLine();
+    }
+
+    // the constants of each enum field, by ordinal, and their pre-encoded names.
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      TypeData data = entry.getValue();
+      if (data.getParseType() != TypeUtils.ParseType.ENUM_OBJECT ||
+          (!StringUtil.isNullOrEmpty(data.getValueExtractFormatter()) &&
+              !StringUtil.isNullOrEmpty(data.getSerializeCodeFormatter()))) {
+        continue;
+      }
+      if (StringUtil.isNullOrEmpty(data.getValueExtractFormatter())) {
+        writer.emitField(data.getParsableType() + "[]", getEnumValuesConstant(entry.getKey()),
+            EnumSet.of(PRIVATE, STATIC, FINAL), data.getParsableType() + ".values()");
+      }
+      if (StringUtil.isNullOrEmpty(data.getSerializeCodeFormatter())) {
+        StringBuilder enumNames = new StringBuilder("{");
+        List<String> enumConstants = data.getEnumConstants();
+        for (int ix = 0; ix < enumConstants.size(); ix++) {
+          enumNames.append(ix == 0 ? "\n" : ",\n")
+              .append("new SerializedString(")
+              .append(JavaWriter.stringLiteral(enumConstants.get(ix)))
+              .append(")");
+        }
+        enumNames.append("}");
+        writer.emitField("SerializedString[]", getEnumNamesConstant(entry.getKey()),
+            EnumSet.of(PRIVATE, STATIC, FINAL), enumNames.toString());
+      }
+      writer.emitEmptyLine();
+    }
+  }
+
+  private static String getEnumValuesConstant(String javaFieldName) {
+    return "ENUM_VALUES_" + javaFieldName;
+  }
+
+  private static String getEnumNamesConstant(String javaFieldName) {
+    return "ENUM_NAMES_" + javaFieldName;
+  }
+
+  private static String getEnumParseMethod(String javaFieldName) {
+    return "parseEnum_" + javaFieldName;
+  }
+
+  private static String getEnumIndexMethod(String javaFieldName) {
+    return "getEnumIndex_" + javaFieldName;
+  }
+
+  /**
+   * This writes the methods that parse the value of each enum field.  The constant is found by
+   * switching on the characters in the parser's text buffer, so no {@link String} is created, and
+   * a value that is not a constant of the enum yields null rather than an exception.  The byte
+   * reader finds it the same way, on the UTF-8 bytes of the value.
+   */
+  private void writeEnumParsers(JavaWriter writer) throws IOException {
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      final TypeData data = entry.getValue();
+      if (data.getParseType() != TypeUtils.ParseType.ENUM_OBJECT ||
+          !StringUtil.isNullOrEmpty(data.getValueExtractFormatter())) {
+        continue;
+      }
+
+      String indexMethod = getEnumIndexMethod(entry.getKey());
+      writer
+          .beginMethod(
+              data.getParsableType(),
+              getEnumParseMethod(entry.getKey()),
+              EnumSet.of(PRIVATE, STATIC, FINAL),
+              Arrays.asList("JsonParser", "jp"),
+              Arrays.asList("IOException"))
+            .beginControlFlow("if (jp.getCurrentToken() != JsonToken.VALUE_STRING)")
+              .emitStatement("return null")
+            .endControlFlow()
+            .emitStatement("int index = %s(jp.getTextCharacters(), jp.getTextOffset(), " +
+                "jp.getTextLength())", indexMethod)
+            .emitStatement("return index >= 0 ? %s[index] : null",
+                getEnumValuesConstant(entry.getKey()))
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "int",
+              indexMethod,
+              EnumSet.of(PRIVATE, STATIC, FINAL),
+              "char[]", "chars", "int", "offset", "int", "length")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  new FieldNameSwitch("chars", "offset", "length", data.getEnumConstants())
+                      .writeSwitch(writer);
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+
+      writer
+          .beginMethod(
+              "int",
+              indexMethod,
+              EnumSet.of(PRIVATE, STATIC, FINAL),
+              "byte[]", "bytes", "int", "offset", "int", "length")
+          .emitWithGenerator(
+              new JavaWriter.JavaGenerator() {
+                @Override
+                public void emitJava(JavaWriter writer) throws IOException {
+                  FieldNameSwitch.forUtf8Bytes("bytes", "offset", "length",
+                      data.getEnumConstants()).writeSwitch(writer);
+                }
+              })
+          .endMethod()
+          .emitEmptyLine();
+    }
+  }
+
+  private static String getMapSizeHint(String javaFieldName) {
+    return "sMapSizeHint_" + javaFieldName;
+  }
+
+  private static String getFieldNameConstant(String javaFieldName) {
+    return "FIELD_NAME_" + javaFieldName;
+  }
+
+  private static String getInheritedFieldIndex(int inheritedFieldIndex) {
+    return "INHERITED_FIELD_INDEX_" + inheritedFieldIndex;
+  }
+
+  /**
+   * This writes the body of the method that maps a json field name onto the index of the field
+   * in this class, or -1 if this class has no such field.  The indices follow the order in which
+   * {@link #writeFields(Messager, JavaWriter)} handles the fields.
+   */
+  private void writeFieldIndexLookup(JavaWriter writer) throws IOException {
+    List<String> fieldNames = new ArrayList<String>();
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      fieldNames.add(entry.getValue().getFieldName());
+    }
+    for (InheritedField inheritedField : mInheritedFields) {
+      fieldNames.add(inheritedField.mFieldName);
+    }
+
+    FieldNameSwitch fieldNameSwitch = new FieldNameSwitch("fieldName", fieldNames);
+    if (mFieldNameChainEnabled) {
+      fieldNameSwitch.writeChain(writer);
+    } else {
+      fieldNameSwitch.writeSwitch(writer);
+    }
+  }
+
+  /**
+   * This writes the loop that binds the fields of an object to {@code instance}.  If
+   * {@code reuse} is true, the fields are bound for {@code parseInto}, reusing the collections and
+   * sub-objects already held by the instance.  Those that are missing from the json are then
+   * dropped, so that they are left null as they would be by {@code parseFromJson}.
+   */
+  private void writeParseLoop(JavaWriter writer, boolean reuse) throws IOException {
+    String fieldNames = getDispatchFieldNames();
+    List<Integer> droppedFields = reuse ? getDroppedFields() : new ArrayList<Integer>();
+    int fieldCount = getFieldCount();
+    if (!droppedFields.isEmpty()) {
+      writer
+          .emitSingleLineComment("the fields that have been seen, by field index.")
+          .emitStatement(fieldCount <= 64 ?
+              "long seen = 0" : "long[] seen = new long[" + (fieldCount + 63) / 64 + "]");
+    }
+    writer
+        .emitSingleLineComment(
+            "fields usually arrive in the order they are declared, so we check whether")
+        .emitSingleLineComment(
+            "the next field is the one after the last field we saw before looking it up.")
+        .emitStatement("int expectedFieldIndex = 0")
+        .beginControlFlow("while (true)")
+          .beginControlFlow("if (expectedFieldIndex < " + fieldNames + ".length && " +
+              "jp.nextFieldName(" + fieldNames + "[expectedFieldIndex]))")
+            .emitStatement("jp.nextToken()")
+            .emitStatement("processField(instance, expectedFieldIndex, jp, null, %b)", reuse);
+    if (!droppedFields.isEmpty()) {
+      writer.emitStatement(getSeenMark(fieldCount, "expectedFieldIndex"));
+    }
+    writer
+            .emitStatement("expectedFieldIndex++")
+          .nextControlFlow("else")
+            .emitStatement(
+                "JsonToken token = expectedFieldIndex < %s.length ? " +
+                    "jp.getCurrentToken() : jp.nextToken()", fieldNames)
+            .beginControlFlow("if (token != JsonToken.FIELD_NAME)")
+              .emitStatement("break")
+            .endControlFlow()
+            .emitStatement("String fieldName = jp.getCurrentName()")
+            .emitStatement("jp.nextToken()")
+            .emitStatement("int fieldIndex = getFieldIndex(fieldName)")
+            .beginControlFlow("if (fieldIndex >= 0)")
+              .emitStatement("processField(instance, fieldIndex, jp, null, %b)", reuse);
+    if (!droppedFields.isEmpty()) {
+      writer.emitStatement(getSeenMark(fieldCount, "fieldIndex"));
+    }
+    writer
+              .emitStatement("expectedFieldIndex = fieldIndex + 1")
+            .endControlFlow()
+          .endControlFlow()
+          // always skip children.  if we expected an array or an object, we would have
+          // consumed the START_ARRAY or START_OBJECT.  therefore, we would only skip
+          // forward if we're seeing something unexpected.
+          .emitStatement("jp.skipChildren()")
+        .endControlFlow();
+
+    for (int fieldIndex : droppedFields) {
+      String seenWord = fieldCount <= 64 ? "seen" : "seen[" + fieldIndex / 64 + "]";
+      writer.beginControlFlow(
+          "if ((" + seenWord + " & (1L << " + fieldIndex % 64 + ")) == 0)")
+            .emitStatement("dropField(instance, %d)", fieldIndex)
+          .endControlFlow();
+    }
+  }
+
+  /**
+   * Returns the statement that records that the field at {@code fieldIndex} has been seen.
+   */
+  private static String getSeenMark(int fieldCount, String fieldIndex) {
+    // a shift of a long only uses the low six bits of the distance.
+    return fieldCount <= 64 ?
+        "seen |= 1L << " + fieldIndex :
+        "seen[" + fieldIndex + " >>> 6] |= 1L << " + fieldIndex;
+  }
+
+  /**
+   * Returns the number of fields the generated code looks up, including the inherited ones.
+   */
+  private int getFieldCount() {
+    int fieldCount = mInheritedFields.size();
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      fieldCount++;
+    }
+    return fieldCount;
+  }
+
+  /**
+   * Returns the indices of the fields that {@code parseInto} drops when they are missing from the
+   * json.  Those are the fields declared by this class that it reuses, and every inherited field,
+   * which the superclass's helper drops if it reuses it.
+   */
+  private List<Integer> getDroppedFields() {
+    List<Integer> droppedFields = new ArrayList<Integer>();
+    int fieldIndex = 0;
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      if (isReusable(entry.getValue())) {
+        droppedFields.add(fieldIndex);
+      }
+      fieldIndex++;
+    }
+    for (int ix = 0; ix < mInheritedFields.size(); ix++) {
+      droppedFields.add(fieldIndex++);
+    }
+    return droppedFields;
+  }
 
-      if (!mAbstractClass) {
+  /**
+   * This writes the body of {@code dropField}, which sets a field that {@code parseInto} reuses
+   * back to null, recycling the sub-object it held.  It does nothing for the other fields, which
+   * {@code reset} has already cleared.
+   */
+  private void writeDropFields(JavaWriter writer) throws IOException {
+    if (getDroppedFields().isEmpty()) {
+      return;
+    }
+    writer.beginControlFlow("switch (fieldIndex)");
+    int fieldIndex = 0;
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      TypeData data = entry.getValue();
+      String fieldName = entry.getKey();
+      if (isReusable(data)) {
+        writer.beginControlFlow("case " + fieldIndex + ":");
+        if (data.getCollectionType() == TypeUtils.CollectionType.NOT_A_COLLECTION) {
+          writer.emitStatement("%s.recycle(instance.%s)", getSubobjectHelper(data), fieldName);
+        }
         writer
-              .beginMethod(
-                  mClassName,
-                  "parseFromJson",
-                  EnumSet.of(PUBLIC, STATIC, FINAL),
-                  Arrays.asList("JsonParser", "jp"),
-                  Arrays.asList("IOException"))
-                .emitStatement("%s instance = new %s()", mClassName, mClassName)
-                .emitSingleLineComment("validate that we're on the right token")
-                .beginControlFlow("if (jp.getCurrentToken() != JsonToken.START_OBJECT)")
-                  .emitStatement("jp.skipChildren()")
-                  .emitStatement("return null")
-                .endControlFlow()
-                .beginControlFlow("while (jp.nextToken() != JsonToken.END_OBJECT)")
-                  .emitStatement("String fieldName = jp.getCurrentName()")
-                  .emitStatement("jp.nextToken()")
-                  .emitStatement("processSingleField(instance, fieldName, jp)")
-                  // always skip children.  if we expected an array or an object, we would have
-                  // consumed the START_ARRAY or START_OBJECT.  therefore, we would only skip
-                  // forward if we're seeing something unexpected.
-                  .emitStatement("jp.skipChildren()")
-                .endControlFlow()
-                .emitStatement("return %s", returnValue)
-              .endMethod()
-              .emitEmptyLine();
+              .emitStatement("instance.%s = null", fieldName)
+              .emitStatement("return")
+            .endControlFlow();
       }
+      fieldIndex++;
+    }
+    for (int ix = 0; ix < mInheritedFields.size(); ix++) {
+      writer.beginControlFlow("case " + fieldIndex + ":")
+            .emitStatement("%s.dropField(instance, %s)",
+                mInheritedFields.get(ix).mInjectedClassName, getInheritedFieldIndex(ix))
+            .emitStatement("return")
+          .endControlFlow();
+      fieldIndex++;
+    }
+    writer.endControlFlow();
+  }
 
-      writer
-          .beginMethod(
-              "boolean",
-              "processSingleField",
-              EnumSet.of(PUBLIC, STATIC, FINAL),
-              Arrays.asList(mClassName, "instance", "String", "fieldName", "JsonParser", "jp"),
-              Arrays.asList("IOException"))
-          .emitWithGenerator(
-              new JavaWriter.JavaGenerator() {
-                @Override
-                public void emitJava(JavaWriter writer) throws IOException {
-                  JsonParserClassData.this.writeFields(messager, writer);
+  /**
+   * Returns the name of the array of the json names of every field the generated code looks up,
+   * ordered by field index.  Those are the fields declared by this class, followed by the fields
+   * inherited from each superclass in turn, which is also the order they are serialized in.
+   */
+  private String getDispatchFieldNames() {
+    return mInheritedFields.isEmpty() ? "FIELD_NAMES" : "ALL_FIELD_NAMES";
+  }
 
-                  // if we reached here, we need to call the superclasses processSingleField
-                  // method.
-                  if (mParentInjectedClassName != null) {
-                    writer.emitStatement("return %s.processSingleField(instance, fieldName, jp)",
-                        mParentInjectedClassName);
-                  } else {
-                    writer.emitStatement("return false");
-                  }
-                }
-              })
-          .endMethod()
-          .emitEmptyLine();
+  /**
+   * This writes the code that clears the fields declared by this class, for {@code reset}.  The
+   * collections that {@code parseInto} can reuse are emptied rather than dropped, and the
+   * sub-objects held by lists are recycled.  The sub-objects that {@code parseInto} can reuse are
+   * left as they are, since {@code parseInto} resets them when it binds them.  {@code parseInto}
+   * then drops the collections and sub-objects that are missing from the json.  Every other field
+   * is set to null, zero or false, regardless of the value the constructor gives it.
+   */
+  private void writeResetFields(Messager messager, JavaWriter writer) throws IOException {
+    for (Map.Entry<String, TypeData> entry : getIterator()) {
+      TypeData data = entry.getValue();
+      String fieldName = entry.getKey();
 
-      if (!mAbstractClass) {
-        writer
-              .beginMethod(
-                  mClassName,
-                  "parseFromJson",
-                  EnumSet.of(PUBLIC, STATIC, FINAL),
-                  Arrays.asList("String", "inputString"),
-                  Arrays.asList("IOException"))
-              .emitStatement(
-                  "JsonParser jp = JsonFactoryHolder.APP_FACTORY.createParser(inputString)")
-              .emitStatement("jp.nextToken()")
-              .emitStatement("return parseFromJson(jp)")
-              .endMethod()
-              .emitEmptyLine();
+      if (!isReusable(data)) {
+        String assignmentFormatter = data.getAssignmentFormatter();
+        if (StringUtil.isNullOrEmpty(assignmentFormatter)) {
+          assignmentFormatter = DEFAULT_ASSIGNMENT_FORMATTER;
+        }
+        writer.emitStatement(
+            StrFormat.createStringFormatter(assignmentFormatter)
+                .addParam("object_varname", "instance")
+                .addParam("field_varname", fieldName)
+                .addParam("extracted_value", getResetValue(data))
+                .format());
+      } else if (data.getCollectionType() == TypeUtils.CollectionType.NOT_A_COLLECTION) {
+        // the sub-object is reset by its own parseInto if the field is bound again, and
+        // recycled by dropField otherwise, so it is not cleared twice.
+        continue;
+      } else {
+        writer.beginControlFlow("if (instance." + fieldName + " != null)");
+        if (isPooledElement(data)) {
+          writer.beginControlFlow(
+              "for (" + getJavaType(messager, data) + " element : instance." + fieldName + ")")
+                .emitStatement("%s.recycle(element)", getSubobjectHelper(data))
+              .endControlFlow();
+        }
+        writer.emitStatement("instance.%s.clear()", fieldName)
+            .endControlFlow();
       }
+    }
+  }
 
-      writer
-            .beginMethod(
-                "void",
-                "serializeToJson",
-                EnumSet.of(PUBLIC, STATIC, FINAL),
-                Arrays.asList("JsonGenerator", "generator",
-                    mClassName, "object",
-                    "boolean", "writeStartAndEnd"),
-                Arrays.asList("IOException"))
-              .beginControlFlow("if (writeStartAndEnd)")
-                .emitStatement("generator.writeStartObject()")
-              .endControlFlow()
-              .emitWithGenerator(
-                  new JavaWriter.JavaGenerator() {
-                    @Override
-                    public void emitJava(JavaWriter writer) throws IOException {
-                      JsonParserClassData.this.writeSerializeCalls(messager, writer);
-
-                      // if we have a superclass, we need to call its serialize method.
-                      if (mParentInjectedClassName != null) {
-                        writer.emitStatement(mParentInjectedClassName +
-                                ".serializeToJson(generator, object, false)");
-                      }
+  /**
+   * Returns true if {@code parseInto} reuses the value of the field instead of replacing it.  That
+   * is the case for collections and sub-objects, unless the field is assigned by custom code, since
+   * the generated code must read the field directly.  A sub-object of a type with subtypes is
+   * always replaced, since the parsed value may be of a different class than the current one.
+   */
+  private static boolean isReusable(TypeData data) {
+    if (!StringUtil.isNullOrEmpty(data.getAssignmentFormatter())) {
+      return false;
+    }
+    switch (data.getCollectionType()) {
+      case LIST:
+      case QUEUE:
+      case MAP:
+      case INT_LIST:
+      case LONG_LIST:
+      case FLOAT_LIST:
+      case DOUBLE_LIST:
+        return true;
+      case NOT_A_COLLECTION:
+        return data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT &&
+            StringUtil.isNullOrEmpty(data.getValueExtractFormatter()) &&
+            !data.isParsableTypePolymorphic();
+      default:
+        return false;
+    }
+  }
 
-                    }
-                  })
-              .beginControlFlow("if (writeStartAndEnd)")
-                .emitStatement("generator.writeEndObject()")
-              .endControlFlow()
-            .endMethod()
-            .emitEmptyLine();
+  /**
+   * Returns true if the field is a list of sub-objects whose elements {@code parseInto} takes from
+   * the sub-object's pool.
+   */
+  private static boolean isPooledElement(TypeData data) {
+    return (data.getCollectionType() == TypeUtils.CollectionType.LIST ||
+        data.getCollectionType() == TypeUtils.CollectionType.QUEUE) &&
+        data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT &&
+        StringUtil.isNullOrEmpty(data.getValueExtractFormatter()) &&
+        !data.isParsableTypePolymorphic();
+  }
 
-      if (!mAbstractClass) {
-        writer
-            .beginMethod(
-                "String",
-                "serializeToJson",
-                EnumSet.of(PUBLIC, STATIC, FINAL),
-                Arrays.asList(mClassName, "object"),
-                Arrays.asList("IOException"))
-            .emitStatement("StringWriter stringWriter = new StringWriter()")
-            .emitStatement(
-                "JsonGenerator generator = " +
-                    "JsonFactoryHolder.APP_FACTORY.createGenerator(stringWriter)")
-            .emitStatement("serializeToJson(generator, object, true)")
-            .emitStatement("generator.close()")
-            .emitStatement("return stringWriter.toString()")
-            .endMethod()
-            .emitEmptyLine();
+  /**
+   * Returns the value {@code reset} assigns to a field that is not reused.
+   */
+  private static String getResetValue(TypeData data) {
+    if (data.getCollectionType() == TypeUtils.CollectionType.NOT_A_COLLECTION) {
+      switch (data.getParseType()) {
+        case BOOLEAN:
+          return "false";
+        case INTEGER:
+        case LONG:
+        case FLOAT:
+        case DOUBLE:
+          return "0";
       }
-
-      writer.endType();
-    } catch (IOException ex) {
-      Console.error(
-          messager, "IOException while generating %s: %s",
-          mInjectedClassName, ex.toString());
     }
+    return "null";
+  }
 
-    return sw.toString();
+  private static String getSubobjectHelper(TypeData data) {
+    return data.getParsableTypeParserClass() + JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX;
   }
 
   /**
-   * This writes the if-else block for the fields in this class.
-   * <p/>
-   * NOTE: This could be optimized further by building a radix trie, and building out the if-else
-   * block from traversing the radix trie.
+   * This writes the switch block for the fields in this class, keyed by the index of the field.
    */
   private void writeFields(Messager messager, JavaWriter writer) throws IOException {
-    boolean firstEntry = true;
+    int fieldIndex = 0;
     for (Map.Entry<String, TypeData> entry : getIterator()) {
       TypeData data = entry.getValue();
 
-      if (firstEntry) {
-        writer.beginControlFlow("if (\"" + data.getFieldName() + "\".equals(fieldName))");
-      } else {
-        writer.nextControlFlow("else if (\"" + data.getFieldName() + "\".equals(fieldName))");
+      if (fieldIndex == 0) {
+        writer.beginControlFlow("switch (fieldIndex)");
       }
+      writer.beginControlFlow("case " + fieldIndex + ":");
 
       if (data.getCollectionType() != TypeUtils.CollectionType.NOT_A_COLLECTION) {
-        generateArrayParser(messager, writer, data);
+        generateArrayParser(messager, writer, entry.getKey(), data);
         String assignmentFormatter = data.getAssignmentFormatter();
         if (StringUtil.isNullOrEmpty(assignmentFormatter)) {
           assignmentFormatter = DEFAULT_ASSIGNMENT_FORMATTER;
@@ -231,7 +1997,20 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
                 .addParam("extracted_value", "results")
                 .format());
       } else {
-        String rValue = generateExtractRvalue(data);
+        String rValue = generateExtractRvalue(entry.getKey(), data);
+        if (isReusable(data)) {
+          // a sub-object that is replaced by null is handed back to the pool.
+          writer
+              .beginControlFlow("if (reuse)")
+                .emitStatement("%s previous = instance.%s", data.getParsableType(), entry.getKey())
+                .emitStatement("instance.%s = %s.parseInto(jp, previous)",
+                    entry.getKey(), getSubobjectHelper(data))
+                .beginControlFlow("if (instance." + entry.getKey() + " == null)")
+                  .emitStatement("%s.recycle(previous)", getSubobjectHelper(data))
+                .endControlFlow()
+                .emitStatement("return true")
+              .endControlFlow();
+        }
         String assignmentFormatter = data.getAssignmentFormatter();
         if (StringUtil.isNullOrEmpty(assignmentFormatter)) {
           assignmentFormatter = DEFAULT_ASSIGNMENT_FORMATTER;
@@ -244,12 +2023,25 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
                 .format());
       }
 
-      writer.emitStatement("return true");
+      writer.emitStatement("return true")
+          .endControlFlow();
+
+      fieldIndex++;
+    }
+
+    for (int ix = 0; ix < mInheritedFields.size(); ix++) {
+      if (fieldIndex == 0) {
+        writer.beginControlFlow("switch (fieldIndex)");
+      }
+      writer.beginControlFlow("case " + fieldIndex + ":")
+            .emitStatement("return %s.processField(instance, %s, jp, childMask, reuse)",
+                mInheritedFields.get(ix).mInjectedClassName, getInheritedFieldIndex(ix))
+          .endControlFlow();
 
-      firstEntry = false;
+      fieldIndex++;
     }
 
-    if (firstEntry == false) {
+    if (fieldIndex != 0) {
       writer.endControlFlow();
     }
   }
@@ -257,17 +2049,51 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
   /**
    * This writes the code to properly parse an array.
    */
-  private void generateArrayParser(Messager messager, JavaWriter writer, TypeData data)
+  private void generateArrayParser(
+      Messager messager, JavaWriter writer, String javaFieldName, TypeData data)
       throws IOException {
     String innerType = getJavaType(messager, data);
+    if (data.getCollectionType() == TypeUtils.CollectionType.ARRAY) {
+      generatePrimitiveArrayParser(writer, javaFieldName, data, innerType);
+      return;
+    }
+    String primitiveListType = mapCollectionTypeToPrimitiveListType(data.getCollectionType());
+    if (primitiveListType != null) {
+      writer.emitStatement("%s results = null", primitiveListType)
+            .beginControlFlow("if (jp.getCurrentToken() == JsonToken.START_ARRAY)");
+      writeReuseOrCreate(writer, javaFieldName, data, "new " + primitiveListType + "()");
+      writer
+              .beginControlFlow("while (jp.nextToken() != JsonToken.END_ARRAY)")
+                .emitStatement("results.add(%s)", generateExtractRvalue(javaFieldName, data))
+              .endControlFlow()
+            .endControlFlow();
+      return;
+    }
+    if (data.getCollectionType() == TypeUtils.CollectionType.MAP) {
+      generateMapParser(writer, javaFieldName, data, innerType);
+      return;
+    }
+    if (data.getCollectionType() == TypeUtils.CollectionType.LAZY) {
+      writer.emitStatement("LazyJsonObject<%s> results = LazyJsonObject.capture(jp, %s.PARSER)",
+          innerType,
+          data.getParsableTypeParserClass() +
+              JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX);
+      return;
+    }
     String interfaceType = mapCollectionTypeToInterfaceType(data.getCollectionType());
     String concreteType = mapCollectionTypeToConcreteType(data.getCollectionType());
 
+    String rValue = generateExtractRvalue(javaFieldName, data);
+    if (isPooledElement(data)) {
+      rValue = "reuse ? " + getSubobjectHelper(data) + ".parseInto(jp, null) : " + rValue;
+    }
     writer.emitStatement("%s<%s> results = null", interfaceType, innerType)
-          .beginControlFlow("if (jp.getCurrentToken() == JsonToken.START_ARRAY)")
-            .emitStatement("results = new %s<%s>()", concreteType, innerType)
+          .beginControlFlow("if (jp.getCurrentToken() == JsonToken.START_ARRAY)");
+    writeReuseOrCreate(
+        writer, javaFieldName, data, "new " + concreteType + "<" + innerType + ">()");
+    writer
             .beginControlFlow("while (jp.nextToken() != JsonToken.END_ARRAY)")
-              .emitStatement("%s parsed = %s", innerType, generateExtractRvalue(data))
+              .emitStatement("%s parsed = %s", innerType, rValue)
               .beginControlFlow("if (parsed != null)")
                 .emitStatement("results.add(parsed)")
               .endControlFlow()
@@ -275,15 +2101,86 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
           .endControlFlow();
   }
 
+  /**
+   * This writes the code that sets {@code results} to a new collection, or for {@code parseInto},
+   * to the emptied collection already held by the field.
+   */
+  private static void writeReuseOrCreate(
+      JavaWriter writer, String javaFieldName, TypeData data, String newCollection)
+      throws IOException {
+    if (!isReusable(data)) {
+      writer.emitStatement("results = %s", newCollection);
+      return;
+    }
+    writer.beginControlFlow("if (reuse && instance." + javaFieldName + " != null)")
+          .emitStatement("results = instance.%s", javaFieldName)
+          .emitStatement("results.clear()")
+        .nextControlFlow("else")
+          .emitStatement("results = %s", newCollection)
+        .endControlFlow();
+  }
+
+  /**
+   * This writes the code to parse a json object into a map.  The keys are the field names as
+   * returned by the parser, which jackson canonicalizes, so repeated keys do not allocate new
+   * strings.  The map is sized from the last map parsed for the same field.
+   */
+  private void generateMapParser(
+      JavaWriter writer, String javaFieldName, TypeData data, String innerType)
+      throws IOException {
+    String sizeHint = getMapSizeHint(javaFieldName);
+    writer.emitStatement("Map<String, %s> results = null", innerType)
+          .beginControlFlow("if (jp.getCurrentToken() == JsonToken.START_OBJECT)");
+    writeReuseOrCreate(writer, javaFieldName, data,
+        String.format("new HashMap<String, %s>(%s * 4 / 3 + 1)", innerType, sizeHint));
+    writer
+            .beginControlFlow("while (jp.nextToken() != JsonToken.END_OBJECT)")
+              .emitStatement("String key = jp.getCurrentName()")
+              .emitStatement("jp.nextToken()")
+              .emitStatement("results.put(key, %s)", generateExtractRvalue(javaFieldName, data))
+            .endControlFlow()
+            .emitStatement("%s = results.size()", sizeHint)
+          .endControlFlow();
+  }
+
+  /**
+   * This writes the code to parse an array of primitives.  The values are collected in a buffer
+   * that doubles as needed, and the result is trimmed to the number of values read, so no value
+   * is ever boxed.
+   */
+  private void generatePrimitiveArrayParser(
+      JavaWriter writer, String javaFieldName, TypeData data, String innerType)
+      throws IOException {
+    writer.emitStatement("%s[] results = null", innerType)
+          .beginControlFlow("if (jp.getCurrentToken() == JsonToken.START_ARRAY)")
+            .emitStatement("%s[] buffer = new %s[%d]",
+                innerType, innerType, PRIMITIVE_ARRAY_INITIAL_CAPACITY)
+            .emitStatement("int count = 0")
+            .beginControlFlow("while (jp.nextToken() != JsonToken.END_ARRAY)")
+              .beginControlFlow("if (count == buffer.length)")
+                .emitStatement("buffer = Arrays.copyOf(buffer, count * 2)")
+              .endControlFlow()
+              .emitStatement("buffer[count++] = %s", generateExtractRvalue(javaFieldName, data))
+            .endControlFlow()
+            .emitStatement(
+                "results = count == buffer.length ? buffer : Arrays.copyOf(buffer, count)")
+          .endControlFlow();
+  }
+
   /**
    * We allow consumers of this library to override how we interact with the jackson to get the
    * value.  This generates the code to generate the rvalue expression.
    */
-  private String generateExtractRvalue(TypeData data) {
+  private String generateExtractRvalue(String javaFieldName, TypeData data) {
     String valueExtractFormatter = data.getValueExtractFormatter();
     if (StringUtil.isNullOrEmpty(valueExtractFormatter)) {
       if (data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT) {
         valueExtractFormatter = PARSABLE_OBJECT_VALUE_EXTRACT_FORMATTER;
+      } else if (data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT) {
+        valueExtractFormatter = getEnumParseMethod(javaFieldName) + "(${parser_object})";
+      } else if (data.isIntern()) {
+        valueExtractFormatter = data.getMapping() == JsonField.TypeMapping.EXACT ?
+            INTERNED_STRING_EXACT_FORMATTER : INTERNED_STRING_COERCED_FORMATTER;
       } else {
         if (data.getMapping() == JsonField.TypeMapping.EXACT) {
           valueExtractFormatter = sExactFormatters.get(data.getParseType());
@@ -302,7 +2199,8 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
   }
 
   private String getJavaType(Messager messager, TypeData type) {
-    if (type.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT) {
+    if (type.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT ||
+        type.getParseType() == TypeUtils.ParseType.ENUM_OBJECT) {
       return type.getParsableType();
     }
 
@@ -315,11 +2213,25 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
         "Could not divine java type for " + type.getFieldName() + " in class " + mClassName);
   }
 
+  private static final int PRIMITIVE_ARRAY_INITIAL_CAPACITY = 16;
+
+  // These are the byte counts used by the size estimates.
+  private static final int LAZY_OBJECT_SIZE_ESTIMATE = 64;
+  private static final int CUSTOM_VALUE_SIZE_ESTIMATE = 16;
+  private static Map<TypeUtils.ParseType, Integer> sValueSizeEstimates =
+      new HashMap<TypeUtils.ParseType, Integer>();
+
   // These are all the default formatters.
   private static String DEFAULT_ASSIGNMENT_FORMATTER =
       "${object_varname}.${field_varname} = ${extracted_value}";
   private static String PARSABLE_OBJECT_VALUE_EXTRACT_FORMATTER =
-      "${subobject_helper_class}.parseFromJson(${parser_object})";
+      "${subobject_helper_class}.parseFromJson(${parser_object}, childMask)";
+  private static String INTERNED_STRING_EXACT_FORMATTER =
+      "(${parser_object}.getCurrentToken() == JsonToken.VALUE_STRING ? " +
+          "StringInterner.getDefault().intern(${parser_object}) : null)";
+  private static String INTERNED_STRING_COERCED_FORMATTER =
+      "(${parser_object}.getCurrentToken() == JsonToken.VALUE_NULL ? null : " +
+          "StringInterner.getDefault().intern(${parser_object}))";
 
   private static Map<TypeUtils.ParseType, String> sExactFormatters =
       new HashMap<TypeUtils.ParseType, String>();
@@ -327,6 +2239,11 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
       new HashMap<TypeUtils.ParseType, String>();
   private static Map<TypeUtils.ParseType, String> sJavaTypes =
       new HashMap<TypeUtils.ParseType, String>();
+  // the JsonByteReader methods that read each kind of number, and how the value is converted.
+  private static Map<TypeUtils.ParseType, String> sByteReaderNumberKinds =
+      new HashMap<TypeUtils.ParseType, String>();
+  private static Map<TypeUtils.ParseType, String> sByteReaderNumberValues =
+      new HashMap<TypeUtils.ParseType, String>();
 
   static {
     sExactFormatters.put(TypeUtils.ParseType.BOOLEAN, "${parser_object}.getBooleanValue()");
@@ -374,12 +2291,46 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
     sCoercedFormatters.put(TypeUtils.ParseType.STRING,
         "(${parser_object}.getCurrentToken() == JsonToken.VALUE_NULL ? null : ${parser_object}.getText())");
 
+    sJavaTypes.put(TypeUtils.ParseType.BOOLEAN, "boolean");
+    sJavaTypes.put(TypeUtils.ParseType.INTEGER, "int");
+    sJavaTypes.put(TypeUtils.ParseType.LONG, "long");
+    sJavaTypes.put(TypeUtils.ParseType.FLOAT, "float");
+    sJavaTypes.put(TypeUtils.ParseType.DOUBLE, "double");
     sJavaTypes.put(TypeUtils.ParseType.BOOLEAN_OBJECT, "Boolean");
     sJavaTypes.put(TypeUtils.ParseType.INTEGER_OBJECT, "Integer");
     sJavaTypes.put(TypeUtils.ParseType.LONG_OBJECT, "Long");
     sJavaTypes.put(TypeUtils.ParseType.FLOAT_OBJECT, "Float");
     sJavaTypes.put(TypeUtils.ParseType.DOUBLE_OBJECT, "Double");
     sJavaTypes.put(TypeUtils.ParseType.STRING, "String");
+
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.INTEGER, "Int");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.INTEGER_OBJECT, "Int");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.LONG, "Long");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.LONG_OBJECT, "Long");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.FLOAT, "Double");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.FLOAT_OBJECT, "Double");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.DOUBLE, "Double");
+    sByteReaderNumberKinds.put(TypeUtils.ParseType.DOUBLE_OBJECT, "Double");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.INTEGER, "${value}");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.INTEGER_OBJECT, "Integer.valueOf(${value})");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.LONG, "${value}");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.LONG_OBJECT, "Long.valueOf(${value})");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.FLOAT, "((float) ${value})");
+    sByteReaderNumberValues.put(
+        TypeUtils.ParseType.FLOAT_OBJECT, "Float.valueOf((float) ${value})");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.DOUBLE, "${value}");
+    sByteReaderNumberValues.put(TypeUtils.ParseType.DOUBLE_OBJECT, "Double.valueOf(${value})");
+
+    sValueSizeEstimates.put(TypeUtils.ParseType.BOOLEAN, 5);
+    sValueSizeEstimates.put(TypeUtils.ParseType.BOOLEAN_OBJECT, 5);
+    sValueSizeEstimates.put(TypeUtils.ParseType.INTEGER, 11);
+    sValueSizeEstimates.put(TypeUtils.ParseType.INTEGER_OBJECT, 11);
+    sValueSizeEstimates.put(TypeUtils.ParseType.LONG, 20);
+    sValueSizeEstimates.put(TypeUtils.ParseType.LONG_OBJECT, 20);
+    sValueSizeEstimates.put(TypeUtils.ParseType.FLOAT, 15);
+    sValueSizeEstimates.put(TypeUtils.ParseType.FLOAT_OBJECT, 15);
+    sValueSizeEstimates.put(TypeUtils.ParseType.DOUBLE, 24);
+    sValueSizeEstimates.put(TypeUtils.ParseType.DOUBLE_OBJECT, 24);
   }
 
   /**
@@ -394,18 +2345,109 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
         if (StringUtil.isNullOrEmpty(serializeCode)) {
           if (data.getParseType() == TypeUtils.ParseType.PARSABLE_OBJECT) {
             serializeCode = PARSABLE_OBJECT_ARRAY_SERIALIZE_CALL;
+          } else if (data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT) {
+            serializeCode = "${generator_object}.writeString(" +
+                getEnumNamesConstant(entry.getKey()) + "[${iterator}.ordinal()])";
           } else {
             serializeCode = mArraySerializeCalls.get(data.getParseType());
           }
         }
 
+        String listType = getJavaType(messager, entry.getValue());
+        if (data.getCollectionType() == TypeUtils.CollectionType.ARRAY) {
+          // elements of a primitive array can never be null, and there is no cast to make.
+          writer
+              .beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")")
+                .emitStatement(
+                    "generator.writeFieldName(%s)", getFieldNameConstant(entry.getKey()))
+                .emitStatement("generator.writeStartArray()")
+                .beginControlFlow(
+                    "for (" + listType + " element : object." + entry.getKey() + ")")
+                  .emitStatement(
+                      StrFormat.createStringFormatter(serializeCode)
+                        .addParam("generator_object", "generator")
+                        .addParam("iterator", "element")
+                        .format())
+                .endControlFlow()
+                .emitStatement("generator.writeEndArray()")
+              .endControlFlow();
+          continue;
+        }
+        if (data.getCollectionType() == TypeUtils.CollectionType.LAZY) {
+          // a lazy object that was never read is written back without being parsed.
+          writer
+              .beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")")
+                .emitStatement(
+                    "generator.writeFieldName(%s)", getFieldNameConstant(entry.getKey()))
+                .beginControlFlow(
+                    "if (!object." + entry.getKey() + ".writeRetainedJson(generator))")
+                  .emitStatement(
+                      StrFormat.createStringFormatter(serializeCode)
+                        .addParam("generator_object", "generator")
+                        .addParam("iterator", "object." + entry.getKey() + ".get()")
+                        .addParam("subobject_helper_class",
+                            data.getParsableTypeParserClass() +
+                                JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX)
+                        .format())
+                .endControlFlow()
+              .endControlFlow();
+          continue;
+        }
+        if (data.getCollectionType() == TypeUtils.CollectionType.MAP) {
+          writer
+              .beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")")
+                .emitStatement(
+                    "generator.writeFieldName(%s)", getFieldNameConstant(entry.getKey()))
+                .emitStatement("generator.writeStartObject()")
+                .beginControlFlow("for (Map.Entry<String, " + listType + "> element : " +
+                    "object." + entry.getKey() + ".entrySet())")
+                  .emitStatement("generator.writeFieldName(element.getKey())")
+                  .beginControlFlow("if (element.getValue() == null)")
+                    .emitStatement("generator.writeNull()")
+                  .nextControlFlow("else")
+                    .emitStatement(
+                        StrFormat.createStringFormatter(serializeCode)
+                          .addParam("generator_object", "generator")
+                          .addParam("iterator", "element.getValue()")
+                          .addParam("subobject_helper_class",
+                              data.getParsableTypeParserClass() +
+                                  JsonAnnotationProcessorConstants.HELPER_CLASS_SUFFIX)
+                          .format())
+                  .endControlFlow()
+                .endControlFlow()
+                .emitStatement("generator.writeEndObject()")
+              .endControlFlow();
+          continue;
+        }
+        String primitiveListType =
+            mapCollectionTypeToPrimitiveListType(data.getCollectionType());
+        if (primitiveListType != null) {
+          writer
+              .beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")")
+                .emitStatement(
+                    "generator.writeFieldName(%s)", getFieldNameConstant(entry.getKey()))
+                .emitStatement("generator.writeStartArray()")
+                .beginControlFlow(
+                    "for (int ix = 0, size = object." + entry.getKey() + ".size(); " +
+                        "ix < size; ix++)")
+                  .emitStatement("%s element = object.%s.get(ix)", listType, entry.getKey())
+                  .emitStatement(
+                      StrFormat.createStringFormatter(serializeCode)
+                        .addParam("generator_object", "generator")
+                        .addParam("iterator", "element")
+                        .format())
+                .endControlFlow()
+                .emitStatement("generator.writeEndArray()")
+              .endControlFlow();
+          continue;
+        }
+
         // needed to do a typecast for erased types
         String interfaceType = mapCollectionTypeToInterfaceType(data.getCollectionType());
-        String listType = getJavaType(messager, entry.getValue());
 
         writer
-            .beginControlFlow("if (object." + entry.getKey() + " != null)")
-              .emitStatement("generator.writeFieldName(\"%s\")", data.getFieldName())
+            .beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")")
+              .emitStatement("generator.writeFieldName(%s)", getFieldNameConstant(entry.getKey()))
               .emitStatement("generator.writeStartArray()")
               .beginControlFlow("for (" + listType +
                   " element : (" + interfaceType + "<" + listType + ">)" +
@@ -429,8 +2471,8 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
             serializeCode = PARSABLE_OBJECT_SERIALIZE_CALL;
           }
           writer
-              .beginControlFlow("if (object." + entry.getKey() + " != null)")
-                .emitStatement("generator.writeFieldName(\"%s\")", data.getFieldName())
+              .beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")")
+                .emitStatement("generator.writeFieldName(%s)", getFieldNameConstant(entry.getKey()))
                 .emitStatement(
                     StrFormat.createStringFormatter(serializeCode)
                         .addParam("generator_object", "generator")
@@ -442,8 +2484,19 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
                         .format())
               .endControlFlow();
         } else {
+          // the default serialize calls only write the value, so that the field name can be
+          // written from its pre-encoded constant.  custom serialize code writes both.
+          String fieldNameStatement = null;
           if (StringUtil.isNullOrEmpty(serializeCode)) {
-            serializeCode = mScalarSerializeCalls.get(data.getParseType());
+            if (data.getParseType() == TypeUtils.ParseType.ENUM_OBJECT) {
+              serializeCode = "${generator_object}.writeString(" +
+                  getEnumNamesConstant(entry.getKey()) +
+                  "[${object_varname}.${field_varname}.ordinal()])";
+            } else {
+              serializeCode = mScalarSerializeCalls.get(data.getParseType());
+            }
+            fieldNameStatement =
+                "generator.writeFieldName(" + getFieldNameConstant(entry.getKey()) + ")";
           }
 
           String statement =
@@ -454,26 +2507,63 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
                   .addParam("json_fieldname", data.getFieldName())
                   .format();
 
-          switch (data.getParseType()) {
-            case BOOLEAN:
-            case INTEGER:
-            case LONG:
-            case FLOAT:
-            case DOUBLE:
-              writer.emitStatement(statement);
-              break;
-
-            default:
-              writer
-                  .beginControlFlow("if (object." + entry.getKey() + " != null)")
-                  .emitStatement(statement)
-                  .endControlFlow();
+          if (isPrimitive(data.getParseType()) && !data.isOmitDefault()) {
+            // a primitive is never null, so it is always written.
+            writeScalarSerializeCall(writer, fieldNameStatement, statement);
+          } else {
+            writer.beginControlFlow("if (" + getSerializeCondition(entry.getKey(), data) + ")");
+            writeScalarSerializeCall(writer, fieldNameStatement, statement);
+            writer.endControlFlow();
           }
         }
       }
     }
   }
 
+  /**
+   * Returns the condition under which the serializer writes a field.  A null is never written.
+   * If the field omits default values, neither is an empty collection or a primitive that is zero
+   * or false.  Floating point values are compared by their bits, so that -0.0 is still written.
+   */
+  private static String getSerializeCondition(String fieldName, TypeData data) {
+    String field = "object." + fieldName;
+    if (data.getCollectionType() == TypeUtils.CollectionType.NOT_A_COLLECTION) {
+      switch (data.getParseType()) {
+        case BOOLEAN:
+          return field;
+        case INTEGER:
+        case LONG:
+          return field + " != 0";
+        case FLOAT:
+          return "Float.floatToRawIntBits(" + field + ") != 0";
+        case DOUBLE:
+          return "Double.doubleToRawLongBits(" + field + ") != 0L";
+        default:
+          return field + " != null";
+      }
+    }
+    if (!data.isOmitDefault()) {
+      return field + " != null";
+    }
+    switch (data.getCollectionType()) {
+      case ARRAY:
+        return field + " != null && " + field + ".length != 0";
+      case LAZY:
+        // telling whether a lazy object is empty would mean parsing it.
+        return field + " != null";
+      default:
+        return field + " != null && !" + field + ".isEmpty()";
+    }
+  }
+
+  private static void writeScalarSerializeCall(
+      JavaWriter writer, String fieldNameStatement, String statement) throws IOException {
+    if (fieldNameStatement != null) {
+      writer.emitStatement(fieldNameStatement);
+    }
+    writer.emitStatement(statement);
+  }
+
   /**
    * used to write a single instance of a parsable object.
    */
@@ -488,27 +2578,27 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
       new HashMap<TypeUtils.ParseType, String>();
   static {
     mScalarSerializeCalls.put(TypeUtils.ParseType.BOOLEAN,
-        "${generator_object}.writeBooleanField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeBoolean(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.BOOLEAN_OBJECT,
-        "${generator_object}.writeBooleanField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeBoolean(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.INTEGER,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.INTEGER_OBJECT,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.LONG,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.LONG_OBJECT,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.FLOAT,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.FLOAT_OBJECT,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.DOUBLE,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.DOUBLE_OBJECT,
-        "${generator_object}.writeNumberField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeNumber(${object_varname}.${field_varname})");
     mScalarSerializeCalls.put(TypeUtils.ParseType.STRING,
-        "${generator_object}.writeStringField(\"${json_fieldname}\", ${object_varname}.${field_varname})");
+        "${generator_object}.writeString(${object_varname}.${field_varname})");
 
     mArraySerializeCalls.put(TypeUtils.ParseType.BOOLEAN,
         "${generator_object}.writeBoolean(${iterator})");
@@ -545,6 +2635,26 @@ public class JsonParserClassData extends ProcessorClassData<String, TypeData> {
     throw new IllegalStateException("unknown collection type");
   }
 
+  /**
+   * Returns the runtime list class that holds the values of a primitive list collection type, or
+   * null if {@code collectionType} is not one.
+   */
+  private static String mapCollectionTypeToPrimitiveListType(
+      TypeUtils.CollectionType collectionType) {
+    switch (collectionType) {
+      case INT_LIST:
+        return "IntList";
+      case LONG_LIST:
+        return "LongList";
+      case FLOAT_LIST:
+        return "FloatList";
+      case DOUBLE_LIST:
+        return "DoubleList";
+      default:
+        return null;
+    }
+  }
+
   private String mapCollectionTypeToConcreteType(TypeUtils.CollectionType collectionType) {
     switch (collectionType) {
       case LIST:
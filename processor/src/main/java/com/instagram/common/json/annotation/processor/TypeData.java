@@ -2,6 +2,8 @@
 
 package com.instagram.common.json.annotation.processor;
 
+import java.util.List;
+
 import com.instagram.common.json.annotation.JsonField;
 import com.instagram.common.json.annotation.util.TypeUtils;
 
@@ -14,10 +16,14 @@ class TypeData {
   private String mValueExtractFormatter;
   private String mAssignmentFormatter;
   private String mSerializeCodeFormatter;
+  private boolean mIntern;
+  private boolean mOmitDefault;
   private TypeUtils.CollectionType mCollectionType;
   private TypeUtils.ParseType mParseType;
   private String mParsableType;
   private String mParsableTypeParserClass;
+  private boolean mParsableTypePolymorphic;
+  private List<String> mEnumConstants;
 
   String getFieldName() {
     return mFieldName;
@@ -59,6 +65,37 @@ class TypeData {
     mSerializeCodeFormatter = serializeCodeFormatter;
   }
 
+  boolean isIntern() {
+    return mIntern;
+  }
+
+  void setIntern(boolean intern) {
+    mIntern = intern;
+  }
+
+  /**
+   * Returns true if the serializer skips an empty collection, or a primitive that is zero or false.
+   */
+  boolean isOmitDefault() {
+    return mOmitDefault;
+  }
+
+  void setOmitDefault(boolean omitDefault) {
+    mOmitDefault = omitDefault;
+  }
+
+  /**
+   * Returns true if the parsable type is abstract or has subtypes, so that a parsed value may be
+   * an instance of a different class than the one held by the field.
+   */
+  boolean isParsableTypePolymorphic() {
+    return mParsableTypePolymorphic;
+  }
+
+  void setParsableTypePolymorphic(boolean parsableTypePolymorphic) {
+    mParsableTypePolymorphic = parsableTypePolymorphic;
+  }
+
   TypeUtils.CollectionType getCollectionType() {
     return mCollectionType;
   }
@@ -90,4 +127,15 @@ class TypeData {
   void setParsableTypeParserClass(String parsableTypeParserClass) {
     mParsableTypeParserClass = parsableTypeParserClass;
   }
+
+  /**
+   * For enum fields, the names of the constants of the enum, in declaration order.
+   */
+  List<String> getEnumConstants() {
+    return mEnumConstants;
+  }
+
+  void setEnumConstants(List<String> enumConstants) {
+    mEnumConstants = enumConstants;
+  }
 }
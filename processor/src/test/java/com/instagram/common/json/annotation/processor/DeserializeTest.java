@@ -2,17 +2,34 @@
 
 package com.instagram.common.json.annotation.processor;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
 import java.io.StringWriter;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 
+import com.instagram.common.json.FieldMask;
+import com.instagram.common.json.IntList;
+import com.instagram.common.json.JsonArrayIterator;
+import com.instagram.common.json.JsonObjectPool;
+import com.instagram.common.json.JsonRecordReader;
+import com.instagram.common.json.LongList;
+import com.instagram.common.json.MappedFileInputStream;
 import com.instagram.common.json.annotation.processor.support.ExtensibleJSONWriter;
 
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Queues;
 import org.json.JSONException;
@@ -149,6 +166,32 @@ public class DeserializeTest {
     assertSame(value, uut.enumField);
   }
 
+  @Test
+  public void generatedEnumTest() throws IOException, JSONException {
+    StringWriter stringWriter = new StringWriter();
+    JSONWriter writer = new JSONWriter(stringWriter);
+
+    writer.object()
+        .key(EnumUUT.GENERATED_ENUM_FIELD_NAME).value(EnumUUT.EnumType.VALUE1.name())
+        .key(EnumUUT.ENUM_LIST_FIELD_NAME).array()
+            .value(EnumUUT.EnumType.VALUE3.name())
+            .value("VALUE4")
+            .value(EnumUUT.EnumType.VALUE0.name())
+        .endArray()
+        .endObject();
+
+    EnumUUT uut = EnumUUT__JsonHelper.parseFromJson(stringWriter.toString());
+
+    assertSame(EnumUUT.EnumType.VALUE1, uut.generatedEnumField);
+    // unknown values are dropped rather than throwing.
+    assertEquals(Lists.newArrayList(EnumUUT.EnumType.VALUE3, EnumUUT.EnumType.VALUE0),
+        uut.enumListField);
+
+    EnumUUT unknown = EnumUUT__JsonHelper.parseFromJson(
+        "{\"" + EnumUUT.GENERATED_ENUM_FIELD_NAME + "\": \"VALUE\"}");
+    assertNull(unknown.generatedEnumField);
+  }
+
   @Test
   public void exactMappingTest() throws IOException, JSONException {
     // boolean exact fail.  should throw exception.
@@ -371,4 +414,894 @@ public class DeserializeTest {
 
     assertNull(uut.stringField);
   }
+
+  @Test
+  public void similarFieldNames() throws IOException, JSONException {
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(SimilarFieldNamesUUT.XBD_FIELD_NAME).value(4)
+        .key(SimilarFieldNamesUUT.ABC_FIELD_NAME).value(1)
+        .key("abe").value(100)
+        .key(SimilarFieldNamesUUT.QUOTE_FIELD_NAME).value(5)
+        .key(SimilarFieldNamesUUT.XBC_FIELD_NAME).value(3)
+        .key(SimilarFieldNamesUUT.EMPTY_FIELD_NAME).value(6)
+        .key(SimilarFieldNamesUUT.ABD_FIELD_NAME).value(2)
+        .endObject();
+
+    SimilarFieldNamesUUT uut =
+        SimilarFieldNamesUUT__JsonHelper.parseFromJson(stringWriter.toString());
+
+    assertEquals(1, uut.abcField);
+    assertEquals(2, uut.abdField);
+    assertEquals(3, uut.xbcField);
+    assertEquals(4, uut.xbdField);
+    assertEquals(5, uut.quoteField);
+    assertEquals(6, uut.emptyField);
+  }
+
+  @Test
+  public void primitiveArrayTest() throws IOException, JSONException {
+    // more values than the initial capacity of the parse buffer.
+    final int count = 40;
+
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(PrimitiveArrayUUT.INT_ARRAY_FIELD_NAME).array();
+    for (int ix = 0; ix < count; ix++) {
+      writer.value(ix);
+    }
+    writer.endArray()
+        .key(PrimitiveArrayUUT.BOOLEAN_ARRAY_FIELD_NAME).array()
+            .value(true)
+            .value(false)
+        .endArray()
+        .key(PrimitiveArrayUUT.LONG_ARRAY_FIELD_NAME).array()
+            .value(Long.MAX_VALUE)
+        .endArray()
+        .key(PrimitiveArrayUUT.DOUBLE_ARRAY_FIELD_NAME).array()
+        .endArray()
+        .key(PrimitiveArrayUUT.FLOAT_ARRAY_FIELD_NAME).value(null)
+        .endObject();
+
+    PrimitiveArrayUUT uut = PrimitiveArrayUUT__JsonHelper.parseFromJson(stringWriter.toString());
+
+    assertEquals(count, uut.intArray.length);
+    for (int ix = 0; ix < count; ix++) {
+      assertEquals(ix, uut.intArray[ix]);
+    }
+    assertTrue(Arrays.equals(new boolean[] {true, false}, uut.booleanArray));
+    assertTrue(Arrays.equals(new long[] {Long.MAX_VALUE}, uut.longArray));
+    assertEquals(0, uut.doubleArray.length);
+    assertNull(uut.floatArray);
+  }
+
+  @Test
+  public void primitiveListTest() throws IOException, JSONException {
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(PrimitiveListUUT.INT_LIST_FIELD_NAME).array()
+            .value(1)
+            .value(-2)
+            .value(3)
+        .endArray()
+        .key(PrimitiveListUUT.LONG_LIST_FIELD_NAME).array()
+            .value(Long.MIN_VALUE)
+        .endArray()
+        .key(PrimitiveListUUT.FLOAT_LIST_FIELD_NAME).array()
+        .endArray()
+        .key(PrimitiveListUUT.DOUBLE_LIST_FIELD_NAME).value(null)
+        .endObject();
+
+    PrimitiveListUUT uut = PrimitiveListUUT__JsonHelper.parseFromJson(stringWriter.toString());
+
+    assertEquals(IntList.of(1, -2, 3), uut.intList);
+    assertEquals(LongList.of(Long.MIN_VALUE), uut.longList);
+    assertTrue(uut.floatList.isEmpty());
+    assertNull(uut.doubleList);
+  }
+
+  @Test
+  public void mapTest() throws IOException, JSONException {
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(MapUUT.STRING_MAP_FIELD_NAME).object()
+            .key("first").value("one")
+            .key("second").value(null)
+        .endObject()
+        .key(MapUUT.INTEGER_MAP_FIELD_NAME).object()
+        .endObject()
+        .key(MapUUT.SUBOBJECT_MAP_FIELD_NAME).object()
+            .key("child").object()
+                .key(SimpleParseUUT.INT_FIELD_NAME).value(17)
+            .endObject()
+        .endObject()
+        .endObject();
+
+    MapUUT uut = MapUUT__JsonHelper.parseFromJson(stringWriter.toString());
+
+    assertEquals(2, uut.stringMap.size());
+    assertEquals("one", uut.stringMap.get("first"));
+    assertTrue(uut.stringMap.containsKey("second"));
+    assertNull(uut.stringMap.get("second"));
+    assertTrue(uut.integerMap.isEmpty());
+    assertEquals(1, uut.subobjectMap.size());
+    assertEquals(17, uut.subobjectMap.get("child").intField);
+  }
+
+  @Test
+  public void mapKeysAreCanonicalizedTest() throws IOException {
+    String json = "[{\"" + MapUUT.INTEGER_MAP_FIELD_NAME + "\": {\"key\": 1}}, " +
+        "{\"" + MapUUT.INTEGER_MAP_FIELD_NAME + "\": {\"key\": 2}}]";
+
+    JsonParser jp = new JsonFactory().createParser(json);
+    jp.nextToken();
+    jp.nextToken();
+    MapUUT first = MapUUT__JsonHelper.parseFromJson(jp);
+    jp.nextToken();
+    MapUUT second = MapUUT__JsonHelper.parseFromJson(jp);
+
+    // both maps share the key string from jackson's symbol table.
+    assertSame(first.integerMap.keySet().iterator().next(),
+        second.integerMap.keySet().iterator().next());
+    assertEquals(Integer.valueOf(2), second.integerMap.get("key"));
+  }
+
+  @Test
+  public void internTest() throws IOException, JSONException {
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(InternUUT.INTERNED_FIELD_NAME).value("photo")
+        .key(InternUUT.EXACT_INTERNED_FIELD_NAME).value(5)
+        .key(InternUUT.INTERNED_LIST_FIELD_NAME).array()
+            .value("photo")
+            .value("video")
+        .endArray()
+        .key(InternUUT.NOT_INTERNED_FIELD_NAME).value("photo")
+        .endObject();
+
+    String json = stringWriter.toString();
+    InternUUT first = InternUUT__JsonHelper.parseFromJson(json);
+    InternUUT second = InternUUT__JsonHelper.parseFromJson(json);
+
+    assertEquals("photo", first.interned);
+    assertSame(first.interned, second.interned);
+    assertSame(first.interned, first.internedList.get(0));
+    assertEquals("video", second.internedList.get(1));
+    assertSame(first.internedList.get(1), second.internedList.get(1));
+    assertNull(first.exactInterned);
+    assertEquals("photo", first.notInterned);
+    assertNotSame(first.notInterned, second.notInterned);
+  }
+
+  @Test
+  public void parseIntoTest() throws IOException {
+    String first = "{\"name\": \"a\", \"sub\": {\"int\": 1, \"String\": \"s\"}, " +
+        "\"subs\": [{\"int\": 2}, {\"int\": 3}], \"map\": {\"k\": \"v\"}, \"ints\": [4, 5]}";
+    String second = "{\"sub\": {\"int\": 6}, \"subs\": [{\"int\": 7}], \"ints\": [8]}";
+
+    ReuseUUT instance = ReuseUUT__JsonHelper.parseFromJson(first);
+    SimpleParseUUT sub = instance.subobjectField;
+    List<SimpleParseUUT> subs = instance.subobjectListField;
+    IntList ints = instance.intListField;
+
+    JsonParser jp = new JsonFactory().createParser(second);
+    jp.nextToken();
+    assertSame(instance, ReuseUUT__JsonHelper.parseInto(jp, instance));
+
+    // the collections and sub-objects in the second object are reused, and the fields missing
+    // from it are left null, as they would be by parseFromJson.
+    assertNull(instance.nameField);
+    assertSame(sub, instance.subobjectField);
+    assertEquals(6, sub.intField);
+    assertNull(sub.stringField);
+    assertSame(subs, instance.subobjectListField);
+    assertEquals(1, subs.size());
+    assertEquals(7, subs.get(0).intField);
+    assertNull(instance.mapField);
+    assertSame(ints, instance.intListField);
+    assertEquals(IntList.of(8), ints);
+
+    jp = new JsonFactory().createParser("{\"ints\": []}");
+    jp.nextToken();
+    ReuseUUT__JsonHelper.parseInto(jp, instance);
+    assertNull(instance.subobjectField);
+    assertNull(instance.subobjectListField);
+    assertSame(ints, instance.intListField);
+    assertTrue(ints.isEmpty());
+
+    // without an instance, parseInto behaves like parseFromJson.
+    jp = new JsonFactory().createParser(first);
+    jp.nextToken();
+    ReuseUUT fresh = ReuseUUT__JsonHelper.parseInto(jp, null);
+    assertEquals("a", fresh.nameField);
+    assertEquals(2, fresh.subobjectListField.size());
+  }
+
+  @Test
+  public void objectPoolTest() throws IOException {
+    String json = "{\"subs\": [{\"int\": 1}, {\"int\": 2}]}";
+    SimpleParseUUT__JsonHelper.setObjectPool(new JsonObjectPool<SimpleParseUUT>(16));
+    try {
+      ReuseUUT instance = ReuseUUT__JsonHelper.parseFromJson(json);
+      SimpleParseUUT element0 = instance.subobjectListField.get(0);
+      SimpleParseUUT element1 = instance.subobjectListField.get(1);
+
+      // resetting the instance recycles the list elements, which are then bound again.
+      JsonParser jp = new JsonFactory().createParser(json);
+      jp.nextToken();
+      ReuseUUT__JsonHelper.parseInto(jp, instance);
+      assertEquals(2, instance.subobjectListField.size());
+      SimpleParseUUT rebound0 = instance.subobjectListField.get(0);
+      SimpleParseUUT rebound1 = instance.subobjectListField.get(1);
+      assertTrue(rebound0 == element0 || rebound0 == element1);
+      assertTrue(rebound1 == element0 || rebound1 == element1);
+      assertNotSame(rebound0, rebound1);
+      assertEquals(1, rebound0.intField);
+      assertEquals(2, rebound1.intField);
+
+      // a sub-object replaced by null is recycled too.
+      jp = new JsonFactory().createParser("{\"sub\": {\"int\": 3}}");
+      jp.nextToken();
+      ReuseUUT__JsonHelper.parseInto(jp, instance);
+      SimpleParseUUT sub = instance.subobjectField;
+      assertEquals(3, sub.intField);
+      jp = new JsonFactory().createParser("{\"sub\": null}");
+      jp.nextToken();
+      ReuseUUT__JsonHelper.parseInto(jp, instance);
+      assertNull(instance.subobjectField);
+      jp = new JsonFactory().createParser("{\"int\": 4}");
+      jp.nextToken();
+      assertSame(sub, SimpleParseUUT__JsonHelper.parseInto(jp, null));
+      assertEquals(4, sub.intField);
+    } finally {
+      SimpleParseUUT__JsonHelper.setObjectPool(null);
+    }
+  }
+
+  @Test
+  public void lazyObjectTest() throws IOException, JSONException {
+    final String stringValue = "h\u00e9llo";
+
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(LazyUUT.LAZY_FIELD_NAME).object()
+            .key(SimpleParseUUT.STRING_FIELD_NAME).value(stringValue)
+            .key(SimpleParseUUT.INTEGER_LIST_FIELD_NAME).array()
+                .value(1)
+                .value(2)
+            .endArray()
+        .endObject()
+        .key(LazyUUT.INT_FIELD_NAME).value(5)
+        .endObject();
+
+    LazyUUT uut = LazyUUT__JsonHelper.parseFromJson(stringWriter.toString());
+
+    // the fields after the lazy object are parsed as usual.
+    assertEquals(5, uut.intField);
+    assertFalse(uut.lazyField.isParsed());
+
+    SimpleParseUUT lazyValue = uut.lazyField.get();
+    assertTrue(uut.lazyField.isParsed());
+    assertEquals(stringValue, lazyValue.stringField);
+    assertEquals(Lists.newArrayList(1, 2), lazyValue.integerListField);
+    assertSame(lazyValue, uut.lazyField.get());
+
+    // the byte parser keeps the bytes of the lazy object as they are.
+    LazyUUT fromBytes = LazyUUT__JsonHelper.parseFromJson(
+        stringWriter.toString().getBytes("UTF-8"));
+    assertEquals(5, fromBytes.intField);
+    assertFalse(fromBytes.lazyField.isParsed());
+    assertEquals(stringWriter.toString(), LazyUUT__JsonHelper.serializeToJson(fromBytes)
+        .replace(" ", ""));
+    assertEquals(stringValue, fromBytes.lazyField.get().stringField);
+    assertEquals(Lists.newArrayList(1, 2), fromBytes.lazyField.get().integerListField);
+
+    String notAnObjectJson =
+        "{\"" + LazyUUT.LAZY_FIELD_NAME + "\": [1, 2], \"" + LazyUUT.INT_FIELD_NAME + "\": 3}";
+    LazyUUT notAnObject = LazyUUT__JsonHelper.parseFromJson(notAnObjectJson);
+    assertNull(notAnObject.lazyField);
+    assertEquals(3, notAnObject.intField);
+    notAnObject = LazyUUT__JsonHelper.parseFromJson(notAnObjectJson.getBytes("UTF-8"));
+    assertNull(notAnObject.lazyField);
+    assertEquals(3, notAnObject.intField);
+  }
+
+  @Test
+  public void fieldMaskTest() throws IOException, JSONException {
+    StringWriter stringWriter = new StringWriter();
+    ExtensibleJSONWriter writer = new ExtensibleJSONWriter(stringWriter);
+
+    writer.object()
+        .key(SimpleParseUUT.INT_FIELD_NAME).value(1)
+        .key(SimpleParseUUT.STRING_FIELD_NAME).value("skipped")
+        .key(SimpleParseUUT.INTEGER_LIST_FIELD_NAME).array()
+            .value(1)
+            .value(2)
+        .endArray()
+        .key(SimpleParseUUT.SUBOBJECT_FIELD_NAME).object()
+            .key(SimpleParseUUT.SubobjectParseUUT.INT_FIELD_NAME).value(2)
+        .endObject()
+        .key(SimpleParseUUT.FLOAT_FIELD_NAME).value(3.5)
+        .endObject();
+    String json = stringWriter.toString();
+
+    FieldMask subobjectMask = SimpleParseUUT_SubobjectParseUUT__JsonHelper.fieldMaskBuilder()
+        .build();
+    FieldMask mask = SimpleParseUUT__JsonHelper.fieldMaskBuilder()
+        .include(SimpleParseUUT.INT_FIELD_NAME)
+        .include(SimpleParseUUT.FLOAT_FIELD_NAME)
+        .include(SimpleParseUUT.SUBOBJECT_FIELD_NAME, subobjectMask)
+        .build();
+    assertEquals(3, mask.size());
+
+    JsonParser jp = new JsonFactory().createParser(json);
+    jp.nextToken();
+    SimpleParseUUT uut = SimpleParseUUT__JsonHelper.parseFromJson(jp, mask);
+
+    assertEquals(1, uut.intField);
+    assertEquals(3.5f, uut.floatField, 0);
+    assertNull(uut.stringField);
+    assertNull(uut.integerListField);
+    // the subobject is created, but none of its fields are bound.
+    assertEquals(0, uut.subobjectField.intField);
+    assertNull(jp.nextToken());
+
+    try {
+      SimpleParseUUT_SubobjectParseUUT__JsonHelper.parseFromJson(jp, mask);
+      fail("a mask for another type should be rejected");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void fieldMaskEarlyExitTest() throws IOException {
+    FieldMask mask = SimpleParseUUT__JsonHelper.fieldMaskBuilder()
+        .include(SimpleParseUUT.INT_FIELD_NAME)
+        .include(SimpleParseUUT.STRING_FIELD_NAME)
+        .build();
+
+    // once both fields are bound, the rest of a nested object is stepped over, and the parser
+    // stays in step with the input.
+    String array =
+        "[{\"int\": 1, \"String\": \"a\", \"int\": 9, \"Subobject\": {\"int\": 3}}, " +
+        "{\"String\": \"b\", \"IntegerList\": [1, 2], \"int\": 2}]";
+    JsonParser jp = new JsonFactory().createParser(array);
+    jp.nextToken();
+    jp.nextToken();
+    SimpleParseUUT first = SimpleParseUUT__JsonHelper.parseFromJson(jp, mask);
+    assertEquals(JsonToken.END_OBJECT, jp.getCurrentToken());
+    jp.nextToken();
+    SimpleParseUUT second = SimpleParseUUT__JsonHelper.parseFromJson(jp, mask);
+    assertEquals(JsonToken.END_ARRAY, jp.nextToken());
+
+    assertEquals(1, first.intField);
+    assertEquals("a", first.stringField);
+    assertNull(first.subobjectField);
+    assertEquals(2, second.intField);
+    assertEquals("b", second.stringField);
+    assertNull(second.integerListField);
+
+    // a top-level object is not read past the last selected field, so the malformed input that
+    // follows is never seen.
+    String prefix = "{\"String\": \"c\", \"int\": 3, \"float\": ]]]";
+    SimpleParseUUT fromString = SimpleParseUUT__JsonHelper.parseFromJson(prefix, mask);
+    SimpleParseUUT fromBytes =
+        SimpleParseUUT__JsonHelper.parseFromJson(prefix.getBytes("UTF-8"), mask);
+    assertEquals(3, fromString.intField);
+    assertEquals("c", fromString.stringField);
+    assertEquals(3, fromBytes.intField);
+    assertEquals("c", fromBytes.stringField);
+  }
+
+  @Test
+  public void arrayIteratorTest() throws IOException {
+    String array = "[{\"int\": 1}, null, 5, {\"int\": 2, \"Subobject\": {\"int\": 3}}]";
+
+    // elements that are not objects are skipped, as they are in list fields.
+    JsonArrayIterator<SimpleParseUUT> iterator = SimpleParseUUT__JsonHelper.parseArrayIterator(
+        new ByteArrayInputStream(array.getBytes("UTF-8")));
+    assertTrue(iterator.hasNext());
+    assertEquals(1, iterator.next().intField);
+    SimpleParseUUT second = iterator.next();
+    assertEquals(2, second.intField);
+    assertEquals(3, second.subobjectField.intField);
+    assertFalse(iterator.hasNext());
+
+    // the parser is left after the array, so the caller can keep reading.
+    JsonParser jp = new JsonFactory().createParser("{\"items\": [{\"int\": 4}], \"after\": 1}");
+    jp.nextToken();
+    jp.nextToken();
+    jp.nextToken();
+    int count = 0;
+    for (JsonArrayIterator<SimpleParseUUT> it = SimpleParseUUT__JsonHelper.parseArrayIterator(jp);
+        it.hasNext(); ) {
+      assertEquals(4, it.next().intField);
+      count++;
+    }
+    assertEquals(1, count);
+    assertEquals(JsonToken.END_ARRAY, jp.getCurrentToken());
+    assertEquals(JsonToken.FIELD_NAME, jp.nextToken());
+    assertEquals("after", jp.getCurrentName());
+
+    // a value that is not an array has no elements.
+    assertFalse(SimpleParseUUT__JsonHelper.parseArrayIterator(
+        new ByteArrayInputStream("{}".getBytes("UTF-8"))).hasNext());
+
+    // read errors surface when the bad element is reached.
+    JsonArrayIterator<SimpleParseUUT> broken = SimpleParseUUT__JsonHelper.parseArrayIterator(
+        new ByteArrayInputStream("[{\"int\": 1}, {\"int\": ]".getBytes("UTF-8")));
+    assertEquals(1, broken.next().intField);
+    try {
+      broken.next();
+      fail("expected an exception");
+    } catch (JsonArrayIterator.IterationException ex) {
+      assertTrue(ex.getCause() instanceof JsonParseException);
+    } finally {
+      broken.close();
+    }
+  }
+
+  @Test
+  public void polymorphicTest() throws IOException {
+    // the discriminator comes first, so the fields are bound as they are read.
+    PolymorphicUUT photo = PolymorphicUUT__JsonHelper.parseFromJson(
+        "{\"type\": \"photo\", \"id\": \"a\", \"url\": \"http://x\"}");
+    assertTrue(photo instanceof PolymorphicUUT.PhotoUUT);
+    assertEquals("a", photo.id);
+    assertEquals("http://x", ((PolymorphicUUT.PhotoUUT) photo).url);
+
+    // the fields before the discriminator are buffered, and bound once the subtype is known.
+    PolymorphicUUT video = PolymorphicUUT__JsonHelper.parseFromJson(
+        "{\"id\": \"b\", \"duration\": 30, \"type\": \"video\", \"extra\": [1, {}]}");
+    assertTrue(video instanceof PolymorphicUUT.VideoUUT);
+    assertEquals("b", video.id);
+    assertEquals(30, ((PolymorphicUUT.VideoUUT) video).duration);
+    assertTrue(((PolymorphicUUT.VideoUUT) video).postprocessed);
+
+    // an abstract class cannot hold an object with a missing or unknown discriminator.
+    assertNull(PolymorphicUUT__JsonHelper.parseFromJson("{\"id\": \"c\"}"));
+    assertNull(PolymorphicUUT__JsonHelper.parseFromJson(
+        "{\"type\": \"audio\", \"id\": \"c\", \"more\": {\"a\": 1}}"));
+
+    PolymorphicUUT.FeedUUT feed = PolymorphicUUT_FeedUUT__JsonHelper.parseFromJson(
+        "{\"items\": [{\"type\": \"photo\", \"id\": \"a\"}, {\"type\": \"audio\"}, " +
+        "{\"id\": \"b\", \"type\": \"video\"}]}");
+    assertEquals(2, feed.items.size());
+    assertTrue(feed.items.get(0) instanceof PolymorphicUUT.PhotoUUT);
+    assertTrue(feed.items.get(1) instanceof PolymorphicUUT.VideoUUT);
+    assertEquals("b", feed.items.get(1).id);
+
+    // a concrete class binds objects without a known discriminator itself.
+    ShapeUUT circle = ShapeUUT__JsonHelper.parseFromJson(
+        "{\"name\": \"c\", \"radius\": 2.5, \"kind\": \"circle\"}");
+    assertTrue(circle instanceof ShapeUUT.CircleUUT);
+    assertEquals("c", circle.name);
+    assertEquals(2.5, ((ShapeUUT.CircleUUT) circle).radius, 0.0);
+
+    ShapeUUT shape = ShapeUUT__JsonHelper.parseFromJson(
+        "{\"name\": \"s\", \"kind\": \"square\", \"radius\": 1}");
+    assertEquals(ShapeUUT.class, shape.getClass());
+    assertEquals("s", shape.name);
+    shape = ShapeUUT__JsonHelper.parseFromJson("{\"name\": \"t\"}");
+    assertEquals(ShapeUUT.class, shape.getClass());
+  }
+
+  @Test
+  public void inputTypesTest() throws IOException, JSONException {
+    final int intValue = 25;
+    final String stringValue = "h\u00e9llo w\u00f6rld \u6f22\u5b57";
+
+    StringWriter stringWriter = new StringWriter();
+    JSONWriter writer = new JSONWriter(stringWriter);
+
+    writer.object()
+        .key(SimpleParseUUT.INT_FIELD_NAME).value(intValue)
+        .key(SimpleParseUUT.STRING_FIELD_NAME).value(stringValue)
+        .endObject();
+
+    String inputString = stringWriter.toString();
+    byte[] inputBytes = inputString.getBytes("UTF-8");
+    byte[] paddedBytes = new byte[inputBytes.length + 10];
+    Arrays.fill(paddedBytes, (byte) '{');
+    System.arraycopy(inputBytes, 0, paddedBytes, 5, inputBytes.length);
+
+    List<SimpleParseUUT> parsed = Lists.newArrayList(
+        SimpleParseUUT__JsonHelper.parseFromJson(inputBytes),
+        SimpleParseUUT__JsonHelper.parseFromJson(paddedBytes, 5, inputBytes.length),
+        SimpleParseUUT__JsonHelper.parseFromJson(new ByteArrayInputStream(inputBytes)),
+        SimpleParseUUT__JsonHelper.parseFromJson(new StringReader(inputString)));
+
+    for (SimpleParseUUT uut : parsed) {
+      assertSame(intValue, uut.intField);
+      assertEquals(stringValue, uut.stringField);
+    }
+  }
+
+  @Test
+  public void byteParserTest() throws IOException {
+    // the byte[] overloads read these with the generated byte parsers, which hand some values, or
+    // the whole input, to jackson.  either way, the result must be what jackson alone produces.
+    String[] simpleInputs = {
+        "{\"int\": 25, \"Integer\": null, \"float\": 1.5e1, \"Float\": -0.0, " +
+            "\"IntegerList\": [1, 2, 3], \"Subobject\": {\"x\": [1, {\"y\": null}], \"int\": 3}}",
+        " {\"String\": \"a\\u00e9\\n\\\"b \u6f22\u5b57 \ud83d\ude00\", " +
+            "\"unknown\": [true, \"s\"]} ",
+        "{\"int\": \"12\", \"Integer\": 1.5, \"Float\": 123456789012345678901234567890}",
+        "{\"int\": -0, \"Integer\": 2147483647, \"float\": 1e-400, \"IntegerList\": null}",
+        "{\"Subobject\": null, \"IntegerQueue\": [4, 5], \"String\": null}",
+    };
+    for (String input : simpleInputs) {
+      assertEquals(
+          SimpleParseUUT__JsonHelper.serializeToJson(
+              SimpleParseUUT__JsonHelper.parseFromJson(input)),
+          SimpleParseUUT__JsonHelper.serializeToJson(
+              SimpleParseUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"))));
+    }
+
+    assertNull(SimpleParseUUT__JsonHelper.parseFromJson("[1, 2]".getBytes("UTF-8")));
+
+    String[] exactInputs = {
+        "{\"boolean\": true, \"Boolean\": false, \"long\": -9223372036854775807, " +
+            "\"Long\": 123456789012345678, \"double\": 0.1, \"Double\": 3.141592653589793}",
+        "{\"double\": 1.7976931348623157e308, \"Double\": 4.9e-324, \"float\": 0.3}",
+        "{\"Boolean\": 15, \"Integer\": false, \"Double\": \"x\", \"String\": 1}",
+    };
+    for (String input : exactInputs) {
+      assertEquals(
+          ExactMappingUUT__JsonHelper.serializeToJson(
+              ExactMappingUUT__JsonHelper.parseFromJson(input)),
+          ExactMappingUUT__JsonHelper.serializeToJson(
+              ExactMappingUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"))));
+    }
+
+    String[] malformedInputs = {
+        "{\"int\": 1,}",
+        "{\"int\": 1",
+        "{\"String\": \"abc",
+        "{\"int\": 01}",
+    };
+    for (String input : malformedInputs) {
+      try {
+        SimpleParseUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"));
+        fail("malformed input should throw exception: " + input);
+      } catch (JsonParseException ex) {
+        // this is expected.
+      }
+    }
+  }
+
+  @Test
+  public void byteParserFieldTypesTest() throws IOException {
+    // enums, primitive arrays and primitive lists are read in place.  an element that is not in
+    // the form the reader handles sends the whole input to jackson.
+    String[] enumInputs = {
+        "{\"enum\": \"VALUE2\", \"enum_list\": [\"VALUE0\", null, \"VALUE9\", \"VALUE3\"]}",
+        "{\"enum\": \"VALUE\\u0031\", \"enum_list\": [\"VALUE\\u0031\", 2]}",
+        "{\"enum\": 1, \"enum_list\": null}",
+        "{\"enum\": null, \"enum_list\": \"VALUE1\"}",
+    };
+    for (String input : enumInputs) {
+      assertEquals(
+          GeneratedEnumUUT__JsonHelper.serializeToJson(
+              GeneratedEnumUUT__JsonHelper.parseFromJson(input)),
+          GeneratedEnumUUT__JsonHelper.serializeToJson(
+              GeneratedEnumUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"))));
+    }
+
+    String[] arrayInputs = {
+        "{\"boolean_array\": [true, false], \"int_array\": [1, -2, 3], " +
+            "\"long_array\": [123456789012345678], \"float_array\": [0.1, 2], " +
+            "\"double_array\": [1e300, -0.0, 5]}",
+        "{\"int_array\": [1, \"2\", 3.5, null], \"long_array\": null, " +
+            "\"boolean_array\": [1], \"double_array\": {}}",
+        "{\"int_array\": [0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17]}",
+    };
+    for (String input : arrayInputs) {
+      assertEquals(
+          PrimitiveArrayUUT__JsonHelper.serializeToJson(
+              PrimitiveArrayUUT__JsonHelper.parseFromJson(input)),
+          PrimitiveArrayUUT__JsonHelper.serializeToJson(
+              PrimitiveArrayUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"))));
+    }
+
+    String[] listInputs = {
+        "{\"int_list\": [1, 2], \"long_list\": [-3], \"float_list\": [1.5], " +
+            "\"double_list\": [0.1, 1e-5]}",
+        "{\"int_list\": [2.5], \"long_list\": [\"4\"], \"double_list\": null}",
+    };
+    for (String input : listInputs) {
+      assertEquals(
+          PrimitiveListUUT__JsonHelper.serializeToJson(
+              PrimitiveListUUT__JsonHelper.parseFromJson(input)),
+          PrimitiveListUUT__JsonHelper.serializeToJson(
+              PrimitiveListUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"))));
+    }
+
+    // maps are not read by the byte reader, so these are parsed by jackson alone.
+    String mapInput = "{\"string_map\": {\"a\": \"b\"}, \"integer_map\": {\"c\": 1}, " +
+        "\"subobject_map\": {\"d\": {\"int\": 2}}}";
+    assertEquals(
+        MapUUT__JsonHelper.serializeToJson(MapUUT__JsonHelper.parseFromJson(mapInput)),
+        MapUUT__JsonHelper.serializeToJson(
+            MapUUT__JsonHelper.parseFromJson(mapInput.getBytes("UTF-8"))));
+  }
+
+  @Test
+  public void byteParserSkipTest() throws IOException {
+    // the byte parsers scan strings eight bytes at a time, so put the characters that need
+    // attention at every offset within a word.
+    String[] specials = {"\\\"", "\\\\", "\\u00e9", "\u00e9", "\u6f22", "\ud83d\ude00", "\""};
+    for (String special : specials) {
+      for (int offset = 0; offset < 10; offset++) {
+        StringBuilder padding = new StringBuilder();
+        for (int ix = 0; ix < offset; ix++) {
+          padding.append((char) ('a' + ix));
+        }
+        String text = padding + special + padding;
+        String input = "{\"unknown\": [\"" + text + "\", {\"" + text + "\": null}], " +
+            "\"String\": \"" + text + "\", \"int\": " + offset + "}";
+        byte[] inputBytes = input.getBytes("UTF-8");
+
+        SimpleParseUUT uut = null;
+        JsonParseException expected = null;
+        try {
+          uut = SimpleParseUUT__JsonHelper.parseFromJson(input);
+        } catch (JsonParseException ex) {
+          expected = ex;
+        }
+        if (expected != null) {
+          // an unescaped quote ends the string early.
+          try {
+            SimpleParseUUT__JsonHelper.parseFromJson(inputBytes);
+            fail("malformed input should throw exception: " + input);
+          } catch (JsonParseException ex) {
+            // this is expected.
+          }
+          continue;
+        }
+        SimpleParseUUT bytesUut = SimpleParseUUT__JsonHelper.parseFromJson(inputBytes);
+        assertEquals(uut.stringField, bytesUut.stringField);
+        assertEquals(offset, bytesUut.intField);
+      }
+    }
+
+    // control characters must be escaped, even in values that are skipped.
+    try {
+      SimpleParseUUT__JsonHelper.parseFromJson(
+          "{\"unknown\": \"abcdefghij\tklmnop\", \"int\": 1}".getBytes("UTF-8"));
+      fail("unescaped control characters should throw exception");
+    } catch (JsonParseException ex) {
+      // this is expected.
+    }
+  }
+
+  @Test
+  public void parseArrayParallelTest() throws IOException {
+    ForkJoinPool pool = new ForkJoinPool(4);
+    try {
+      // enough elements to be split into several chunks, with some that are not objects.
+      StringBuilder sb = new StringBuilder("[");
+      for (int ix = 0; ix < 3000; ix++) {
+        sb.append(ix == 0 ? "" : ",\n");
+        if (ix % 100 == 7) {
+          sb.append(ix % 200 == 7 ? "null" : "[{\"int\": -1}, \"]\"]");
+        } else {
+          sb.append("{\"int\": ").append(ix)
+              .append(", \"String\": \"s}\\\"{").append(ix).append("\"")
+              .append(", \"Subobject\": {\"int\": ").append(ix * 2).append("}}");
+        }
+      }
+      sb.append("]");
+      byte[] input = sb.toString().getBytes("UTF-8");
+
+      List<SimpleParseUUT> parsed = SimpleParseUUT__JsonHelper.parseArrayParallel(input, pool);
+      List<SimpleParseUUT> expected = Lists.newArrayList(
+          SimpleParseUUT__JsonHelper.parseArrayIterator(new ByteArrayInputStream(input)));
+      assertEquals(2970, parsed.size());
+      for (int ix = 0; ix < parsed.size(); ix++) {
+        assertEquals(expected.get(ix).intField, parsed.get(ix).intField);
+        assertEquals(expected.get(ix).stringField, parsed.get(ix).stringField);
+        assertEquals(
+            expected.get(ix).subobjectField.intField, parsed.get(ix).subobjectField.intField);
+      }
+
+      assertTrue(SimpleParseUUT__JsonHelper.parseArrayParallel(
+          " [ ] ".getBytes("UTF-8"), pool).isEmpty());
+      // a value that is not an array has no elements.
+      assertTrue(SimpleParseUUT__JsonHelper.parseArrayParallel(
+          "{\"int\": 1}".getBytes("UTF-8"), pool).isEmpty());
+
+      String[] malformedInputs = {
+          "[{\"int\": 1}, {\"int\": ]",
+          "[{\"int\": 1} {\"int\": 2}]",
+          "[{\"int\": 1}, {\"int\": tru}]",
+          "[{\"int\": 1}, {\"int\" 2}]",
+      };
+      for (String malformed : malformedInputs) {
+        try {
+          SimpleParseUUT__JsonHelper.parseArrayParallel(malformed.getBytes("UTF-8"), pool);
+          fail("malformed input should throw exception: " + malformed);
+        } catch (JsonParseException ex) {
+          // this is expected.
+        }
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void parseRecordsTest() throws IOException {
+    // newline-delimited records, and also records that are only separated by whitespace, or not
+    // at all.  one record is larger than the reader's buffer.
+    StringBuilder sb = new StringBuilder();
+    List<Integer> expected = Lists.newArrayList();
+    for (int ix = 0; ix < 5000; ix++) {
+      if (ix % 500 == 3) {
+        sb.append("null\n5 \"s\"\n");
+      }
+      if (ix % 7 == 0) {
+        sb.append("{\n  \"int\": ").append(ix).append(",\n  \"String\": \"a\\\"}\"\n}  ");
+      } else if (ix == 1234) {
+        sb.append("{\"String\": \"");
+        for (int jx = 0; jx < 100000; jx++) {
+          sb.append((char) ('a' + jx % 26));
+        }
+        sb.append("\", \"int\": ").append(ix).append("}\n");
+      } else {
+        sb.append("{\"int\": ").append(ix).append("}").append(ix % 3 == 0 ? "" : "\n");
+      }
+      expected.add(ix);
+    }
+    byte[] input = sb.toString().getBytes("UTF-8");
+
+    JsonRecordReader<SimpleParseUUT> ordered =
+        SimpleParseUUT__JsonHelper.parseRecords(new ByteArrayInputStream(input), 3, true);
+    List<Integer> parsed = Lists.newArrayList();
+    while (ordered.hasNext()) {
+      parsed.add(ordered.next().intField);
+    }
+    assertEquals(expected, parsed);
+
+    // a stream that returns a few bytes at a time splits records across reads.
+    InputStream trickle = new FilterInputStream(new ByteArrayInputStream(input)) {
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+        return super.read(buffer, offset, Math.min(length, 4093));
+      }
+
+      @Override
+      public int available() {
+        return 0;
+      }
+    };
+    JsonRecordReader<SimpleParseUUT> unordered =
+        SimpleParseUUT__JsonHelper.parseRecords(trickle, 4, false);
+    parsed.clear();
+    while (unordered.hasNext()) {
+      parsed.add(unordered.next().intField);
+    }
+    Collections.sort(parsed);
+    assertEquals(expected, parsed);
+
+    // the records before a malformed one are returned first.
+    JsonRecordReader<SimpleParseUUT> broken = SimpleParseUUT__JsonHelper.parseRecords(
+        new ByteArrayInputStream("{\"int\": 1}\n{\"int\": 2}\n{\"int\": }\n{\"int\": 4}\n"
+            .getBytes("UTF-8")), 2, true);
+    assertEquals(1, broken.next().intField);
+    assertEquals(2, broken.next().intField);
+    try {
+      broken.next();
+      fail("expected an exception");
+    } catch (JsonArrayIterator.IterationException ex) {
+      assertTrue(ex.getCause() instanceof JsonParseException);
+    }
+    assertFalse(broken.hasNext());
+
+    // an incomplete last record fails too.
+    JsonRecordReader<SimpleParseUUT> truncated = SimpleParseUUT__JsonHelper.parseRecords(
+        new ByteArrayInputStream("{\"int\": 1}\n{\"int\": 2".getBytes("UTF-8")), 2, true);
+    assertEquals(1, truncated.next().intField);
+    try {
+      truncated.next();
+      fail("expected an exception");
+    } catch (JsonArrayIterator.IterationException ex) {
+      assertTrue(ex.getCause() instanceof JsonParseException);
+    }
+
+    // a reader can be closed before the end.
+    JsonRecordReader<SimpleParseUUT> early =
+        SimpleParseUUT__JsonHelper.parseRecords(new ByteArrayInputStream(input), 2, false);
+    assertTrue(early.hasNext());
+    early.next();
+    early.close();
+    assertFalse(early.hasNext());
+  }
+
+  @Test(timeout = 10000)
+  public void parseRecordsRuntimeExceptionTest() throws IOException {
+    // the postprocessing hook throws for a negative value.
+    byte[] input = ("{\"" + PostprocessingUUT.FIELD_NAME + "\": 1}\n" +
+        "{\"" + PostprocessingUUT.FIELD_NAME + "\": -1}\n" +
+        "{\"" + PostprocessingUUT.FIELD_NAME + "\": 3}\n").getBytes("UTF-8");
+    for (boolean ordered : new boolean[] {true, false}) {
+      JsonRecordReader<PostprocessingUUT> records =
+          PostprocessingUUT__JsonHelper.parseRecords(new ByteArrayInputStream(input), 2, ordered);
+      assertEquals(2, records.next().value);
+      try {
+        records.hasNext();
+        fail("expected an exception");
+      } catch (RuntimeException ex) {
+        assertTrue(ex.getCause() instanceof IllegalArgumentException);
+      }
+      assertFalse(records.hasNext());
+    }
+  }
+
+  @Test
+  public void parseFromFileTest() throws IOException {
+    StringBuilder text = new StringBuilder();
+    for (int ix = 0; ix < 20000; ix++) {
+      text.append(ix % 3 == 0 ? "\u00e9" : ix % 3 == 1 ? "\u6f22" : "a");
+    }
+    StringBuilder sb = new StringBuilder("{\"String\": \"").append(text).append("\", ");
+    sb.append("\"IntegerList\": [");
+    for (int ix = 0; ix < 5000; ix++) {
+      sb.append(ix == 0 ? "" : ", ").append(ix);
+    }
+    sb.append("], \"int\": 7}");
+    byte[] input = sb.toString().getBytes("UTF-8");
+
+    File file = File.createTempFile("parseFromFileTest", ".json");
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      try {
+        out.write(input);
+      } finally {
+        out.close();
+      }
+
+      SimpleParseUUT uut = SimpleParseUUT__JsonHelper.parseFromFile(file);
+      assertEquals(7, uut.intField);
+      assertEquals(text.toString(), uut.stringField);
+      assertEquals(5000, uut.integerListField.size());
+      assertEquals(Integer.valueOf(4999), uut.integerListField.get(4999));
+
+      // with small windows, reads and characters straddle the windows.
+      uut = SimpleParseUUT__JsonHelper.parseFromJson(new MappedFileInputStream(file, 4099));
+      assertEquals(7, uut.intField);
+      assertEquals(text.toString(), uut.stringField);
+
+      MappedFileInputStream in = new MappedFileInputStream(file, 4099);
+      ByteArrayOutputStream copy = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1000];
+      copy.write(in.read());
+      assertEquals(9000, in.skip(9000));
+      copy.write(input, 1, 9000);
+      for (int read; (read = in.read(buffer, 0, buffer.length)) >= 0; ) {
+        copy.write(buffer, 0, read);
+      }
+      in.close();
+      assertArrayEquals(input, copy.toByteArray());
+
+      // an empty file has no object.
+      new FileOutputStream(file).close();
+      assertNull(SimpleParseUUT__JsonHelper.parseFromFile(file));
+    } finally {
+      file.delete();
+    }
+  }
 }
@@ -4,6 +4,7 @@ package com.instagram.common.json.annotation.processor;
 
 import java.io.IOException;
 
+import com.instagram.common.json.FieldMask;
 import com.instagram.common.json.annotation.processor.dependent.SubclassUUT;
 import com.instagram.common.json.annotation.processor.dependent.SubclassUUT__JsonHelper;
 import com.instagram.common.json.annotation.processor.dependent.SubclassWithAbstractParentUUT;
@@ -11,11 +12,17 @@ import com.instagram.common.json.annotation.processor.dependent.SubclassWithAbst
 import com.instagram.common.json.annotation.processor.dependent.WrapperClassUUT;
 import com.instagram.common.json.annotation.processor.dependent.WrapperClassUUT__JsonHelper;
 import com.instagram.common.json.annotation.processor.parent.ParentUUT;
+import com.instagram.common.json.annotation.processor.parent.ParentUUT__JsonHelper;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
 import org.json.JSONException;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Try to do stuff across modules.
@@ -46,6 +53,88 @@ public class InterModuleTest {
     assertEquals(uut.subclassInt, parsed.subclassInt);
   }
 
+  /**
+   * Parses a subclass with a mask that selects fields from both classes.
+   */
+  @Test
+  public void subclassFieldMaskTest() throws IOException, JSONException {
+    SubclassUUT uut = new SubclassUUT();
+    uut.parentInt = 25;
+    uut.parentString = "hello world";
+    uut.subclassInt = 30;
+
+    String serialized = SubclassUUT__JsonHelper.serializeToJson(uut);
+
+    FieldMask mask = SubclassUUT__JsonHelper.fieldMaskBuilder()
+        .include(ParentUUT.PARENT_INT_KEY)
+        .include(SubclassUUT.SUBCLASS_INT_KEY)
+        .build();
+    assertEquals(2, mask.size());
+
+    JsonParser jp = new JsonFactory().createParser(serialized);
+    jp.nextToken();
+    SubclassUUT parsed = SubclassUUT__JsonHelper.parseFromJson(jp, mask);
+
+    assertEquals(uut.parentInt, parsed.parentInt);
+    assertNull(parsed.parentString);
+    assertEquals(uut.subclassInt, parsed.subclassInt);
+  }
+
+  /**
+   * Parses a subclass whose inherited fields arrive in any order, mixed with unknown fields.  The
+   * subclass looks up its own and its parent's fields in one table.
+   */
+  @Test
+  public void subclassFieldOrderTest() throws IOException, JSONException {
+    String json = "{\"parent_int\": 25, \"unknown\": {\"parent_int\": 1}, " +
+        "\"subclass_int\": 30, \"parent_string\": \"hello world\", \"parent_int\": 26}";
+
+    SubclassUUT parsed = SubclassUUT__JsonHelper.parseFromJson(json);
+
+    assertEquals(26, parsed.parentInt);
+    assertEquals("hello world", parsed.parentString);
+    assertEquals(30, parsed.subclassInt);
+
+    SubclassUUT single = new SubclassUUT();
+    JsonParser jp = new JsonFactory().createParser("\"hello\"");
+    jp.nextToken();
+    assertTrue(SubclassUUT__JsonHelper.processSingleField(
+        single, ParentUUT.PARENT_STRING_KEY, jp));
+    assertEquals("hello", single.parentString);
+    assertFalse(SubclassUUT__JsonHelper.processSingleField(single, "unknown", jp));
+  }
+
+  /**
+   * The byte parser of a subclass reads inherited fields with the parent's helper.
+   */
+  @Test
+  public void subclassByteParserTest() throws IOException, JSONException {
+    String[] inputs = {
+        "{\"parent_int\": 25, \"subclass_int\": 30, \"parent_string\": \"hello world\"}",
+        "{\"parent_string\": null, \"parent_int\": \"12\", \"unknown\": [1]}",
+    };
+    for (String input : inputs) {
+      assertEquals(
+          SubclassUUT__JsonHelper.serializeToJson(SubclassUUT__JsonHelper.parseFromJson(input)),
+          SubclassUUT__JsonHelper.serializeToJson(
+              SubclassUUT__JsonHelper.parseFromJson(input.getBytes("UTF-8"))));
+    }
+  }
+
+  /**
+   * The subclass finds the index of each inherited field in its parent's helper by name, so the
+   * parent's fields may be reordered without recompiling the subclass.
+   */
+  @Test
+  public void parentFieldIndexTest() {
+    int stringIndex = ParentUUT__JsonHelper.getFieldIndex(ParentUUT.PARENT_STRING_KEY);
+    int intIndex = ParentUUT__JsonHelper.getFieldIndex(ParentUUT.PARENT_INT_KEY);
+    assertTrue(stringIndex >= 0);
+    assertTrue(intIndex >= 0);
+    assertTrue(stringIndex != intIndex);
+    assertEquals(-1, ParentUUT__JsonHelper.getFieldIndex("unknown"));
+  }
+
   /**
    * Subclasses an abstract java object in a different class.
    */
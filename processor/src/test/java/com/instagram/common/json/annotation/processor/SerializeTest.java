@@ -2,14 +2,25 @@
 
 package com.instagram.common.json.annotation.processor;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 
+import com.instagram.common.json.DoubleList;
+import com.instagram.common.json.FloatList;
+import com.instagram.common.json.IntList;
+import com.instagram.common.json.LazyJsonObject;
+import com.instagram.common.json.LongList;
+
 import com.fasterxml.jackson.core.JsonFactory;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Queues;
 import org.json.JSONException;
 import org.junit.Test;
 
@@ -87,11 +98,15 @@ public class SerializeTest {
 
     EnumUUT source = new EnumUUT();
     source.enumField = value;
+    source.generatedEnumField = EnumUUT.EnumType.VALUE0;
+    source.enumListField = Lists.newArrayList(EnumUUT.EnumType.VALUE2, EnumUUT.EnumType.VALUE1);
 
     String serialized = EnumUUT__JsonHelper.serializeToJson(source);
     EnumUUT parsed = EnumUUT__JsonHelper.parseFromJson(serialized);
 
     assertSame(source.enumField, parsed.enumField);
+    assertSame(source.generatedEnumField, parsed.generatedEnumField);
+    assertEquals(source.enumListField, parsed.enumListField);
   }
 
   @Test
@@ -173,4 +188,330 @@ public class SerializeTest {
     }
     assertSame(source.subobjectField.intField, parsed.subobjectField.intField);
   }
+
+  @Test
+  public void declarationOrderTest() throws IOException {
+    SimpleParseUUT source = new SimpleParseUUT();
+    source.integerField = 37;
+    source.FloatField = 2.0f;
+    source.stringField = "hello world";
+    source.integerListField = Lists.newArrayList(1, 2, 3, 4);
+    source.integerQueueField = Queues.newArrayDeque(Arrays.asList(1, 2, 3, 4));
+    source.subobjectField = new SimpleParseUUT.SubobjectParseUUT();
+
+    String serialized = SimpleParseUUT__JsonHelper.serializeToJson(source);
+
+    List<String> fieldNames = Lists.newArrayList();
+    JsonParser jp = new JsonFactory().createParser(serialized);
+    jp.nextToken();
+    while (jp.nextToken() != JsonToken.END_OBJECT) {
+      fieldNames.add(jp.getCurrentName());
+      jp.nextToken();
+      jp.skipChildren();
+    }
+
+    assertEquals(
+        Lists.newArrayList(
+            SimpleParseUUT.INT_FIELD_NAME,
+            SimpleParseUUT.INTEGER_FIELD_NAME,
+            SimpleParseUUT.FLOAT_FIELD_NAME,
+            SimpleParseUUT.FLOAT_OBJ_FIELD_NAME,
+            SimpleParseUUT.STRING_FIELD_NAME,
+            SimpleParseUUT.INTEGER_LIST_FIELD_NAME,
+            SimpleParseUUT.INTEGER_QUEUE_FIELD_NAME,
+            SimpleParseUUT.SUBOBJECT_FIELD_NAME),
+        fieldNames);
+
+    // fields in the expected order and fields out of order should parse the same way.
+    SimpleParseUUT parsed = SimpleParseUUT__JsonHelper.parseFromJson(serialized);
+    assertEquals(source.integerField, parsed.integerField);
+    assertEquals(source.FloatField, parsed.FloatField);
+    assertEquals(source.stringField, parsed.stringField);
+    assertEquals(source.integerListField, parsed.integerListField);
+    assertEquals(Lists.newArrayList(source.integerQueueField),
+        Lists.newArrayList(parsed.integerQueueField));
+    assertNotNull(parsed.subobjectField);
+  }
+
+  @Test
+  public void byteSerializeTest() throws IOException {
+    final int intValue = 25;
+    final String stringValue = "h\u00e9llo w\u00f6rld \u6f22\u5b57";
+
+    SimpleParseUUT source = new SimpleParseUUT();
+    source.intField = intValue;
+    source.stringField = stringValue;
+
+    String expected = SimpleParseUUT__JsonHelper.serializeToJson(source);
+
+    byte[] serialized = SimpleParseUUT__JsonHelper.serializeToJsonBytes(source);
+    assertEquals(expected, new String(serialized, "UTF-8"));
+
+    final boolean[] closed = new boolean[1];
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream() {
+      @Override
+      public void close() throws IOException {
+        closed[0] = true;
+        super.close();
+      }
+    };
+    SimpleParseUUT__JsonHelper.serializeToJson(outputStream, source);
+    assertEquals(expected, new String(outputStream.toByteArray(), "UTF-8"));
+    assertFalse(closed[0]);
+
+    // the stream stays open, so more objects can be written to it.
+    SimpleParseUUT__JsonHelper.serializeToJson(outputStream, source);
+    assertEquals(expected + expected, new String(outputStream.toByteArray(), "UTF-8"));
+    assertFalse(closed[0]);
+
+    SimpleParseUUT parsed = SimpleParseUUT__JsonHelper.parseFromJson(serialized);
+    assertSame(source.intField, parsed.intField);
+    assertEquals(source.stringField, parsed.stringField);
+  }
+
+  @Test
+  public void largeThenSmallSerializeTest() throws IOException {
+    // the pooled buffers are replaced after a large object, and still serve the next one.
+    StringBuilder sb = new StringBuilder();
+    for (int ix = 0; ix < 100000; ix++) {
+      sb.append((char) ('a' + ix % 26));
+    }
+    SimpleParseUUT large = new SimpleParseUUT();
+    large.stringField = sb.toString();
+    SimpleParseUUT small = new SimpleParseUUT();
+    small.stringField = "small";
+
+    for (int ix = 0; ix < 2; ix++) {
+      assertEquals(large.stringField, SimpleParseUUT__JsonHelper.parseFromJson(
+          SimpleParseUUT__JsonHelper.serializeToJson(large)).stringField);
+      assertEquals(small.stringField, SimpleParseUUT__JsonHelper.parseFromJson(
+          SimpleParseUUT__JsonHelper.serializeToJson(small)).stringField);
+      assertEquals(large.stringField, SimpleParseUUT__JsonHelper.parseFromJson(
+          SimpleParseUUT__JsonHelper.serializeToJsonBytes(large)).stringField);
+      assertEquals(small.stringField, SimpleParseUUT__JsonHelper.parseFromJson(
+          SimpleParseUUT__JsonHelper.serializeToJsonBytes(small)).stringField);
+    }
+  }
+
+  @Test
+  public void primitiveArrayTest() throws IOException {
+    PrimitiveArrayUUT source = new PrimitiveArrayUUT();
+    source.booleanArray = new boolean[] {true, false, true};
+    source.intArray = new int[] {1, -2, Integer.MAX_VALUE};
+    source.longArray = new long[] {Long.MIN_VALUE, 0};
+    source.floatArray = new float[] {1.5f};
+    source.doubleArray = new double[0];
+
+    String serialized = PrimitiveArrayUUT__JsonHelper.serializeToJson(source);
+    PrimitiveArrayUUT parsed = PrimitiveArrayUUT__JsonHelper.parseFromJson(serialized);
+
+    assertTrue(Arrays.equals(source.booleanArray, parsed.booleanArray));
+    assertTrue(Arrays.equals(source.intArray, parsed.intArray));
+    assertTrue(Arrays.equals(source.longArray, parsed.longArray));
+    assertTrue(Arrays.equals(source.floatArray, parsed.floatArray));
+    assertTrue(Arrays.equals(source.doubleArray, parsed.doubleArray));
+  }
+
+  @Test
+  public void primitiveListTest() throws IOException {
+    PrimitiveListUUT source = new PrimitiveListUUT();
+    source.intList = IntList.of(4, 5, Integer.MIN_VALUE);
+    source.longList = LongList.of(Long.MAX_VALUE, -1);
+    source.floatList = FloatList.of(0.25f);
+    source.doubleList = new DoubleList();
+
+    String serialized = PrimitiveListUUT__JsonHelper.serializeToJson(source);
+    PrimitiveListUUT parsed = PrimitiveListUUT__JsonHelper.parseFromJson(serialized);
+
+    assertEquals(source.intList, parsed.intList);
+    assertEquals(source.longList, parsed.longList);
+    assertEquals(source.floatList, parsed.floatList);
+    assertEquals(source.doubleList, parsed.doubleList);
+  }
+
+  @Test
+  public void mapTest() throws IOException {
+    SimpleParseUUT child = new SimpleParseUUT();
+    child.intField = 5;
+
+    MapUUT source = new MapUUT();
+    source.stringMap = new HashMap<String, String>();
+    source.stringMap.put("first", "one");
+    source.stringMap.put("second", null);
+    source.integerMap = new HashMap<String, Integer>();
+    source.integerMap.put("\"quoted\"", 3);
+    source.subobjectMap = new HashMap<String, SimpleParseUUT>();
+    source.subobjectMap.put("child", child);
+
+    String serialized = MapUUT__JsonHelper.serializeToJson(source);
+    MapUUT parsed = MapUUT__JsonHelper.parseFromJson(serialized);
+
+    assertEquals(source.stringMap, parsed.stringMap);
+    assertEquals(source.integerMap, parsed.integerMap);
+    assertEquals(1, parsed.subobjectMap.size());
+    assertEquals(child.intField, parsed.subobjectMap.get("child").intField);
+  }
+
+  @Test
+  public void lazyObjectTest() throws IOException {
+    SimpleParseUUT child = new SimpleParseUUT();
+    child.intField = 7;
+    child.stringField = "child";
+
+    LazyUUT source = new LazyUUT();
+    source.lazyField = LazyJsonObject.of(child);
+    source.intField = 3;
+
+    String serialized = LazyUUT__JsonHelper.serializeToJson(source);
+    LazyUUT parsed = LazyUUT__JsonHelper.parseFromJson(serialized);
+
+    // serializing an object whose lazy field was never read writes back the retained json.
+    String reserialized = LazyUUT__JsonHelper.serializeToJson(parsed);
+    assertFalse(parsed.lazyField.isParsed());
+    assertEquals(serialized, reserialized);
+
+    assertEquals(child.intField, parsed.lazyField.get().intField);
+    assertEquals(child.stringField, parsed.lazyField.get().stringField);
+    assertEquals(serialized, LazyUUT__JsonHelper.serializeToJson(parsed));
+  }
+
+  @Test
+  public void escapedFieldNameTest() throws IOException {
+    SimilarFieldNamesUUT source = new SimilarFieldNamesUUT();
+    source.abcField = 1;
+    source.quoteField = 5;
+    source.emptyField = 6;
+
+    String serialized = SimilarFieldNamesUUT__JsonHelper.serializeToJson(source);
+    SimilarFieldNamesUUT parsed = SimilarFieldNamesUUT__JsonHelper.parseFromJson(serialized);
+
+    assertEquals(source.abcField, parsed.abcField);
+    assertEquals(source.quoteField, parsed.quoteField);
+    assertEquals(source.emptyField, parsed.emptyField);
+  }
+
+  @Test
+  public void repeatedSerializeTest() throws IOException {
+    SimpleParseUUT first = new SimpleParseUUT();
+    first.intField = 25;
+    first.stringField = "hello world";
+    first.integerListField = Lists.newArrayList(1, 2, 3, 4);
+
+    SimpleParseUUT second = new SimpleParseUUT();
+    second.intField = 37;
+
+    // the generators and buffers are reused between calls, so each call must only return its
+    // own output.
+    String firstSerialized = SimpleParseUUT__JsonHelper.serializeToJson(first);
+    String secondSerialized = SimpleParseUUT__JsonHelper.serializeToJson(second);
+    byte[] firstBytes = SimpleParseUUT__JsonHelper.serializeToJsonBytes(first);
+    byte[] secondBytes = SimpleParseUUT__JsonHelper.serializeToJsonBytes(second);
+
+    assertEquals(firstSerialized, SimpleParseUUT__JsonHelper.serializeToJson(first));
+    assertEquals(secondSerialized, SimpleParseUUT__JsonHelper.serializeToJson(second));
+    assertEquals(firstSerialized, new String(firstBytes, "UTF-8"));
+    assertEquals(secondSerialized, new String(secondBytes, "UTF-8"));
+    assertTrue(secondSerialized.startsWith("{"));
+
+    assertEquals(first.intField, SimpleParseUUT__JsonHelper.parseFromJson(firstBytes).intField);
+    assertEquals(second.intField, SimpleParseUUT__JsonHelper.parseFromJson(secondBytes).intField);
+  }
+
+  @Test
+  public void polymorphicSerializeTest() throws IOException {
+    PolymorphicUUT.VideoUUT video = new PolymorphicUUT.VideoUUT();
+    video.id = "b";
+    video.duration = 30;
+    PolymorphicUUT.PhotoUUT photo = new PolymorphicUUT.PhotoUUT();
+    photo.id = "a";
+    photo.url = "http://x";
+
+    // the discriminator is written first, so the subtype can be picked without buffering.
+    String serialized = PolymorphicUUT__JsonHelper.serializeToJson(video);
+    assertTrue(serialized.startsWith("{\"type\":\"video\","));
+    PolymorphicUUT parsed = PolymorphicUUT__JsonHelper.parseFromJson(serialized);
+    assertTrue(parsed instanceof PolymorphicUUT.VideoUUT);
+    assertEquals("b", parsed.id);
+    assertEquals(30, ((PolymorphicUUT.VideoUUT) parsed).duration);
+
+    PolymorphicUUT.FeedUUT feed = new PolymorphicUUT.FeedUUT();
+    feed.items = Lists.<PolymorphicUUT>newArrayList(photo, video);
+    PolymorphicUUT.FeedUUT parsedFeed = PolymorphicUUT_FeedUUT__JsonHelper.parseFromJson(
+        PolymorphicUUT_FeedUUT__JsonHelper.serializeToJson(feed));
+    assertEquals(2, parsedFeed.items.size());
+    assertEquals("http://x", ((PolymorphicUUT.PhotoUUT) parsedFeed.items.get(0)).url);
+    assertEquals(30, ((PolymorphicUUT.VideoUUT) parsedFeed.items.get(1)).duration);
+
+    // an instance of the base class itself has no discriminator.
+    ShapeUUT shape = new ShapeUUT();
+    shape.name = "s";
+    assertEquals("{\"name\":\"s\"}", ShapeUUT__JsonHelper.serializeToJson(shape));
+  }
+
+  @Test
+  public void omitDefaultsTest() throws IOException {
+    OmitDefaultsUUT empty = new OmitDefaultsUUT();
+    empty.listField = Lists.newArrayList();
+    empty.mapField = new HashMap<String, Integer>();
+    empty.arrayField = new int[0];
+    empty.intListField = new IntList();
+
+    // only the field that overrides the type's setting is written.
+    assertEquals("{\"written\":0}", OmitDefaultsUUT__JsonHelper.serializeToJson(empty));
+
+    OmitDefaultsUUT full = new OmitDefaultsUUT();
+    full.booleanField = true;
+    full.intField = 1;
+    full.longField = 2;
+    full.floatField = -0.0f;
+    full.doubleField = 0.5;
+    full.stringField = "";
+    full.listField = Lists.newArrayList("a");
+    full.mapField = new HashMap<String, Integer>();
+    full.mapField.put("b", 0);
+    full.arrayField = new int[] {0};
+    full.intListField = new IntList();
+    full.intListField.add(0);
+
+    OmitDefaultsUUT parsed = OmitDefaultsUUT__JsonHelper.parseFromJson(
+        OmitDefaultsUUT__JsonHelper.serializeToJson(full));
+    assertTrue(parsed.booleanField);
+    assertEquals(1, parsed.intField);
+    assertEquals(2, parsed.longField);
+    assertEquals(Float.floatToRawIntBits(-0.0f), Float.floatToRawIntBits(parsed.floatField));
+    assertEquals(0.5, parsed.doubleField, 0.0);
+    assertEquals("", parsed.stringField);
+    assertEquals(full.listField, parsed.listField);
+    assertEquals(full.mapField, parsed.mapField);
+    assertArrayEquals(full.arrayField, parsed.arrayField);
+    assertEquals(1, parsed.intListField.size());
+  }
+
+  @Test
+  public void estimateSerializedSizeTest() throws IOException {
+    SimpleParseUUT small = new SimpleParseUUT();
+    small.stringField = "hello";
+    small.integerListField = Lists.newArrayList(1, 2, 3);
+    small.subobjectField = new SimpleParseUUT.SubobjectParseUUT();
+    small.subobjectField.intField = 5;
+
+    int smallSize = SimpleParseUUT__JsonHelper.serializeToJsonBytes(small).length;
+    int smallEstimate = SimpleParseUUT__JsonHelper.estimateSerializedSize(small);
+    assertTrue(smallEstimate >= smallSize);
+    assertTrue(smallEstimate < smallSize * 4);
+
+    // large enough to need a buffer bigger than the initial one.
+    PolymorphicUUT.FeedUUT feed = new PolymorphicUUT.FeedUUT();
+    feed.items = Lists.newArrayList();
+    for (int ix = 0; ix < 5000; ix++) {
+      PolymorphicUUT.PhotoUUT photo = new PolymorphicUUT.PhotoUUT();
+      photo.id = Integer.toString(ix);
+      photo.url = "http://example.com/" + ix;
+      feed.items.add(photo);
+    }
+    byte[] feedBytes = PolymorphicUUT_FeedUUT__JsonHelper.serializeToJsonBytes(feed);
+    assertTrue(PolymorphicUUT_FeedUUT__JsonHelper.estimateSerializedSize(feed) >= feedBytes.length);
+    assertEquals(PolymorphicUUT_FeedUUT__JsonHelper.serializeToJson(feed),
+        new String(feedBytes, "UTF-8"));
+  }
 }
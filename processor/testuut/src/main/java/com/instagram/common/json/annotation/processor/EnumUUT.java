@@ -2,6 +2,8 @@
 
 package com.instagram.common.json.annotation.processor;
 
+import java.util.List;
+
 import com.instagram.common.json.annotation.JsonField;
 import com.instagram.common.json.annotation.JsonType;
 
@@ -11,6 +13,8 @@ import com.instagram.common.json.annotation.JsonType;
 @JsonType
 public class EnumUUT {
   public static final String ENUM_FIELD_NAME = "enum";
+  public static final String GENERATED_ENUM_FIELD_NAME = "generated_enum";
+  public static final String ENUM_LIST_FIELD_NAME = "enum_list";
 
   public enum EnumType {
     VALUE0,
@@ -24,4 +28,10 @@ public class EnumUUT {
       serializeCodeFormatter =
           "${generator_object}.writeStringField(\"${json_fieldname}\", ${object_varname}.${field_varname}.toString())")
   public EnumType enumField;
+
+  @JsonField(fieldName = GENERATED_ENUM_FIELD_NAME)
+  public EnumType generatedEnumField;
+
+  @JsonField(fieldName = ENUM_LIST_FIELD_NAME)
+  public List<EnumType> enumListField;
 }
@@ -0,0 +1,23 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.util.List;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for enums that are parsed by the generated code alone.
+ */
+@JsonType
+public class GeneratedEnumUUT {
+  public static final String ENUM_FIELD_NAME = "enum";
+  public static final String ENUM_LIST_FIELD_NAME = "enum_list";
+
+  @JsonField(fieldName = ENUM_FIELD_NAME)
+  public EnumUUT.EnumType enumField;
+
+  @JsonField(fieldName = ENUM_LIST_FIELD_NAME)
+  public List<EnumUUT.EnumType> enumListField;
+}
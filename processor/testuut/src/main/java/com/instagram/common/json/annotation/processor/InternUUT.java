@@ -0,0 +1,32 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.util.List;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for interned string fields.
+ */
+@JsonType
+public class InternUUT {
+  public static final String INTERNED_FIELD_NAME = "interned";
+  public static final String EXACT_INTERNED_FIELD_NAME = "exact_interned";
+  public static final String INTERNED_LIST_FIELD_NAME = "interned_list";
+  public static final String NOT_INTERNED_FIELD_NAME = "not_interned";
+
+  @JsonField(fieldName = INTERNED_FIELD_NAME, intern = true)
+  public String interned;
+
+  @JsonField(fieldName = EXACT_INTERNED_FIELD_NAME, intern = true,
+      mapping = JsonField.TypeMapping.EXACT)
+  public String exactInterned;
+
+  @JsonField(fieldName = INTERNED_LIST_FIELD_NAME, intern = true)
+  public List<String> internedList;
+
+  @JsonField(fieldName = NOT_INTERNED_FIELD_NAME)
+  public String notInterned;
+}
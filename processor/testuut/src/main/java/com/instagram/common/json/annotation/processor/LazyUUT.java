@@ -0,0 +1,22 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import com.instagram.common.json.LazyJsonObject;
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for lazily parsed sub-objects.
+ */
+@JsonType
+public class LazyUUT {
+  public static final String LAZY_FIELD_NAME = "lazy";
+  public static final String INT_FIELD_NAME = "int";
+
+  @JsonField(fieldName = LAZY_FIELD_NAME)
+  public LazyJsonObject<SimpleParseUUT> lazyField;
+
+  @JsonField(fieldName = INT_FIELD_NAME)
+  public int intField;
+}
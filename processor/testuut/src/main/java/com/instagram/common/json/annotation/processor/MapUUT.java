@@ -0,0 +1,27 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.util.Map;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for maps with string keys.
+ */
+@JsonType
+public class MapUUT {
+  public static final String STRING_MAP_FIELD_NAME = "string_map";
+  public static final String INTEGER_MAP_FIELD_NAME = "integer_map";
+  public static final String SUBOBJECT_MAP_FIELD_NAME = "subobject_map";
+
+  @JsonField(fieldName = STRING_MAP_FIELD_NAME)
+  public Map<String, String> stringMap;
+
+  @JsonField(fieldName = INTEGER_MAP_FIELD_NAME)
+  public Map<String, Integer> integerMap;
+
+  @JsonField(fieldName = SUBOBJECT_MAP_FIELD_NAME)
+  public Map<String, SimpleParseUUT> subobjectMap;
+}
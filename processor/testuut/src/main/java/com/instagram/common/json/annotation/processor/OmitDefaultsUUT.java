@@ -0,0 +1,61 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.util.List;
+import java.util.Map;
+
+import com.instagram.common.json.IntList;
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for omitting default values when serializing.
+ */
+@JsonType(omitDefaultValues = true)
+public class OmitDefaultsUUT {
+  public static final String BOOLEAN_FIELD_NAME = "boolean";
+  public static final String INT_FIELD_NAME = "int";
+  public static final String LONG_FIELD_NAME = "long";
+  public static final String FLOAT_FIELD_NAME = "float";
+  public static final String DOUBLE_FIELD_NAME = "double";
+  public static final String STRING_FIELD_NAME = "string";
+  public static final String LIST_FIELD_NAME = "list";
+  public static final String MAP_FIELD_NAME = "map";
+  public static final String ARRAY_FIELD_NAME = "array";
+  public static final String INT_LIST_FIELD_NAME = "ints";
+  public static final String WRITTEN_FIELD_NAME = "written";
+
+  @JsonField(fieldName = BOOLEAN_FIELD_NAME)
+  public boolean booleanField;
+
+  @JsonField(fieldName = INT_FIELD_NAME)
+  public int intField;
+
+  @JsonField(fieldName = LONG_FIELD_NAME)
+  public long longField;
+
+  @JsonField(fieldName = FLOAT_FIELD_NAME)
+  public float floatField;
+
+  @JsonField(fieldName = DOUBLE_FIELD_NAME)
+  public double doubleField;
+
+  @JsonField(fieldName = STRING_FIELD_NAME)
+  public String stringField;
+
+  @JsonField(fieldName = LIST_FIELD_NAME)
+  public List<String> listField;
+
+  @JsonField(fieldName = MAP_FIELD_NAME)
+  public Map<String, Integer> mapField;
+
+  @JsonField(fieldName = ARRAY_FIELD_NAME)
+  public int[] arrayField;
+
+  @JsonField(fieldName = INT_LIST_FIELD_NAME)
+  public IntList intListField;
+
+  @JsonField(fieldName = WRITTEN_FIELD_NAME, defaultValues = JsonField.DefaultValues.WRITE)
+  public int writtenField;
+}
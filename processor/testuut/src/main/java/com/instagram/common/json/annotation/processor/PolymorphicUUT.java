@@ -0,0 +1,58 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.util.List;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonSubtype;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for an abstract class whose subtypes are selected by a discriminator field.
+ */
+@JsonType(
+    discriminatorFieldName = PolymorphicUUT.TYPE_FIELD_NAME,
+    subtypes = {
+        @JsonSubtype(value = PolymorphicUUT.PHOTO_TYPE, type = PolymorphicUUT.PhotoUUT.class),
+        @JsonSubtype(value = PolymorphicUUT.VIDEO_TYPE, type = PolymorphicUUT.VideoUUT.class)})
+public abstract class PolymorphicUUT {
+  public static final String TYPE_FIELD_NAME = "type";
+  public static final String PHOTO_TYPE = "photo";
+  public static final String VIDEO_TYPE = "video";
+  public static final String ID_FIELD_NAME = "id";
+
+  @JsonField(fieldName = ID_FIELD_NAME)
+  public String id;
+
+  @JsonType
+  public static class PhotoUUT extends PolymorphicUUT {
+    public static final String URL_FIELD_NAME = "url";
+
+    @JsonField(fieldName = URL_FIELD_NAME)
+    public String url;
+  }
+
+  @JsonType(postprocessingEnabled = true)
+  public static class VideoUUT extends PolymorphicUUT {
+    public static final String DURATION_FIELD_NAME = "duration";
+
+    @JsonField(fieldName = DURATION_FIELD_NAME)
+    public int duration;
+
+    public boolean postprocessed;
+
+    VideoUUT postprocess() {
+      postprocessed = true;
+      return this;
+    }
+  }
+
+  @JsonType
+  public static class FeedUUT {
+    public static final String ITEMS_FIELD_NAME = "items";
+
+    @JsonField(fieldName = ITEMS_FIELD_NAME)
+    public List<PolymorphicUUT> items;
+  }
+}
@@ -16,6 +16,9 @@ public class PostprocessingUUT {
   int value;
 
   PostprocessingUUT postprocess() {
+    if (value < 0) {
+      throw new IllegalArgumentException("value must not be negative: " + value);
+    }
     value = value + 1;
     return this;
   }
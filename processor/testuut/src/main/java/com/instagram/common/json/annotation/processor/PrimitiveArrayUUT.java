@@ -0,0 +1,33 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for arrays of primitives.
+ */
+@JsonType
+public class PrimitiveArrayUUT {
+  public static final String BOOLEAN_ARRAY_FIELD_NAME = "boolean_array";
+  public static final String INT_ARRAY_FIELD_NAME = "int_array";
+  public static final String LONG_ARRAY_FIELD_NAME = "long_array";
+  public static final String FLOAT_ARRAY_FIELD_NAME = "float_array";
+  public static final String DOUBLE_ARRAY_FIELD_NAME = "double_array";
+
+  @JsonField(fieldName = BOOLEAN_ARRAY_FIELD_NAME)
+  public boolean[] booleanArray;
+
+  @JsonField(fieldName = INT_ARRAY_FIELD_NAME)
+  public int[] intArray;
+
+  @JsonField(fieldName = LONG_ARRAY_FIELD_NAME)
+  public long[] longArray;
+
+  @JsonField(fieldName = FLOAT_ARRAY_FIELD_NAME)
+  public float[] floatArray;
+
+  @JsonField(fieldName = DOUBLE_ARRAY_FIELD_NAME)
+  public double[] doubleArray;
+}
@@ -0,0 +1,33 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import com.instagram.common.json.DoubleList;
+import com.instagram.common.json.FloatList;
+import com.instagram.common.json.IntList;
+import com.instagram.common.json.LongList;
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for the primitive list types.
+ */
+@JsonType
+public class PrimitiveListUUT {
+  public static final String INT_LIST_FIELD_NAME = "int_list";
+  public static final String LONG_LIST_FIELD_NAME = "long_list";
+  public static final String FLOAT_LIST_FIELD_NAME = "float_list";
+  public static final String DOUBLE_LIST_FIELD_NAME = "double_list";
+
+  @JsonField(fieldName = INT_LIST_FIELD_NAME)
+  public IntList intList;
+
+  @JsonField(fieldName = LONG_LIST_FIELD_NAME)
+  public LongList longList;
+
+  @JsonField(fieldName = FLOAT_LIST_FIELD_NAME)
+  public FloatList floatList;
+
+  @JsonField(fieldName = DOUBLE_LIST_FIELD_NAME)
+  public DoubleList doubleList;
+}
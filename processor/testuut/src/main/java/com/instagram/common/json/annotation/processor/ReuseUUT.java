@@ -0,0 +1,37 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import java.util.List;
+import java.util.Map;
+
+import com.instagram.common.json.IntList;
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for parsing into reused instances.
+ */
+@JsonType
+public class ReuseUUT {
+  public static final String NAME_FIELD_NAME = "name";
+  public static final String SUBOBJECT_FIELD_NAME = "sub";
+  public static final String SUBOBJECT_LIST_FIELD_NAME = "subs";
+  public static final String MAP_FIELD_NAME = "map";
+  public static final String INT_LIST_FIELD_NAME = "ints";
+
+  @JsonField(fieldName = NAME_FIELD_NAME)
+  public String nameField;
+
+  @JsonField(fieldName = SUBOBJECT_FIELD_NAME)
+  public SimpleParseUUT subobjectField;
+
+  @JsonField(fieldName = SUBOBJECT_LIST_FIELD_NAME)
+  public List<SimpleParseUUT> subobjectListField;
+
+  @JsonField(fieldName = MAP_FIELD_NAME)
+  public Map<String, String> mapField;
+
+  @JsonField(fieldName = INT_LIST_FIELD_NAME)
+  public IntList intListField;
+}
@@ -0,0 +1,30 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonSubtype;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT for a concrete class with subtypes, which binds objects without a known discriminator.
+ */
+@JsonType(
+    discriminatorFieldName = ShapeUUT.KIND_FIELD_NAME,
+    subtypes = @JsonSubtype(value = ShapeUUT.CIRCLE_KIND, type = ShapeUUT.CircleUUT.class))
+public class ShapeUUT {
+  public static final String KIND_FIELD_NAME = "kind";
+  public static final String CIRCLE_KIND = "circle";
+  public static final String NAME_FIELD_NAME = "name";
+
+  @JsonField(fieldName = NAME_FIELD_NAME)
+  public String name;
+
+  @JsonType
+  public static class CircleUUT extends ShapeUUT {
+    public static final String RADIUS_FIELD_NAME = "radius";
+
+    @JsonField(fieldName = RADIUS_FIELD_NAME)
+    public double radius;
+  }
+}
@@ -0,0 +1,38 @@
+// Copyright 2004-present Facebook. All Rights Reserved.
+
+package com.instagram.common.json.annotation.processor;
+
+import com.instagram.common.json.annotation.JsonField;
+import com.instagram.common.json.annotation.JsonType;
+
+/**
+ * UUT with field names that only differ in a few characters, to exercise the generated field name
+ * dispatch.
+ */
+@JsonType
+public class SimilarFieldNamesUUT {
+  public static final String ABC_FIELD_NAME = "abc";
+  public static final String ABD_FIELD_NAME = "abd";
+  public static final String XBC_FIELD_NAME = "xbc";
+  public static final String XBD_FIELD_NAME = "xbd";
+  public static final String QUOTE_FIELD_NAME = "a'\\\"";
+  public static final String EMPTY_FIELD_NAME = "";
+
+  @JsonField(fieldName = ABC_FIELD_NAME)
+  public int abcField;
+
+  @JsonField(fieldName = ABD_FIELD_NAME)
+  public int abdField;
+
+  @JsonField(fieldName = XBC_FIELD_NAME)
+  public int xbcField;
+
+  @JsonField(fieldName = XBD_FIELD_NAME)
+  public int xbdField;
+
+  @JsonField(fieldName = QUOTE_FIELD_NAME)
+  public int quoteField;
+
+  @JsonField(fieldName = EMPTY_FIELD_NAME)
+  public int emptyField;
+}
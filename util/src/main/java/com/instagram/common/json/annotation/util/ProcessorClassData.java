@@ -4,8 +4,8 @@ package com.instagram.common.json.annotation.util;
 
 import javax.annotation.processing.Messager;
 
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 /**
@@ -50,7 +50,7 @@ abstract public class ProcessorClassData<AnnotationKeyType, AnnotationRecordType
     mClassName = className;
     mInjectedClassName = injectedClassName;
     mFactory = factory;
-    mData = new HashMap<AnnotationKeyType, AnnotationRecordType>();
+    mData = new LinkedHashMap<AnnotationKeyType, AnnotationRecordType>();
   }
 
   /**
@@ -74,7 +74,8 @@ abstract public class ProcessorClassData<AnnotationKeyType, AnnotationRecordType
   }
 
   /**
-   * Returns an iterator across all the records gathered by this injector.
+   * Returns an iterator across all the records gathered by this injector, in the order in which
+   * they were first created.
    */
   protected Iterable<Map.Entry<AnnotationKeyType, AnnotationRecordType>> getIterator() {
     return new Iterable<Map.Entry<AnnotationKeyType, AnnotationRecordType>>() {
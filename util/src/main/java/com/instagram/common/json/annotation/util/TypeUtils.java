@@ -6,6 +6,7 @@ import javax.annotation.processing.Messager;
 import javax.lang.model.element.Element;
 import javax.lang.model.element.TypeElement;
 import javax.lang.model.element.TypeParameterElement;
+import javax.lang.model.type.ArrayType;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeKind;
 import javax.lang.model.type.TypeMirror;
@@ -42,6 +43,13 @@ public class TypeUtils {
     NOT_A_COLLECTION,
     LIST,
     QUEUE,
+    ARRAY,
+    INT_LIST,
+    LONG_LIST,
+    FLOAT_LIST,
+    DOUBLE_LIST,
+    MAP,
+    LAZY,
   }
 
   private static final String JAVA_LANG_STRING = "java.lang.String";
@@ -54,7 +62,16 @@ public class TypeUtils {
   private static final String JAVA_UTIL_LIST_UNTYPED = "java.util.List";
   private static final String JAVA_UTIL_QUEUE = "java.util.Queue<?>";
   private static final String JAVA_UTIL_QUEUE_UNTYPED = "java.util.Queue";
+  private static final String JAVA_UTIL_MAP = "java.util.Map<?,?>";
+  private static final String JAVA_UTIL_MAP_UNTYPED = "java.util.Map";
   private static final String JAVA_LANG_ENUM = "java.lang.Enum<?>";
+  private static final String INT_LIST = "com.instagram.common.json.IntList";
+  private static final String LONG_LIST = "com.instagram.common.json.LongList";
+  private static final String FLOAT_LIST = "com.instagram.common.json.FloatList";
+  private static final String DOUBLE_LIST = "com.instagram.common.json.DoubleList";
+  private static final String LAZY_JSON_OBJECT = "com.instagram.common.json.LazyJsonObject<?>";
+  private static final String LAZY_JSON_OBJECT_UNTYPED =
+      "com.instagram.common.json.LazyJsonObject";
 
   private final Types mTypes;
   private final Messager mMessager;
@@ -117,23 +134,57 @@ public class TypeUtils {
   }
 
   public CollectionType getCollectionType(TypeMirror typeMirror) {
+    if (typeMirror.getKind() == TypeKind.ARRAY) {
+      return CollectionType.ARRAY;
+    }
     String erasedType = mTypes.erasure(typeMirror).toString();
     if (JAVA_UTIL_LIST_UNTYPED.equals(erasedType)) {
       return CollectionType.LIST;
     } else if (JAVA_UTIL_QUEUE_UNTYPED.equals(erasedType)) {
       return CollectionType.QUEUE;
+    } else if (JAVA_UTIL_MAP_UNTYPED.equals(erasedType)) {
+      return CollectionType.MAP;
+    } else if (INT_LIST.equals(erasedType)) {
+      return CollectionType.INT_LIST;
+    } else if (LONG_LIST.equals(erasedType)) {
+      return CollectionType.LONG_LIST;
+    } else if (FLOAT_LIST.equals(erasedType)) {
+      return CollectionType.FLOAT_LIST;
+    } else if (DOUBLE_LIST.equals(erasedType)) {
+      return CollectionType.DOUBLE_LIST;
+    } else if (LAZY_JSON_OBJECT_UNTYPED.equals(erasedType)) {
+      return CollectionType.LAZY;
     }
     return CollectionType.NOT_A_COLLECTION;
   }
 
   /**
    * If {@code typeMirror} represents a list type ({@link java.util.List}), attempt to divine the
-   * type of the contents.
+   * type of the contents.  If {@code typeMirror} represents an array type, this returns the
+   * component type.  If {@code typeMirror} represents one of the primitive list types, such as
+   * {@code IntList}, this returns the primitive type it holds.  If {@code typeMirror} represents a
+   * map ({@link java.util.Map}) with {@link String} keys, this returns the type of the values.  If
+   * {@code typeMirror} represents a {@code LazyJsonObject}, this returns the type it holds.
    *
-   * Returns null if {@code typeMirror} does not represent a list type or if we cannot divine the
-   * type of the contents.
+   * Returns null if {@code typeMirror} does not represent a list or array type or if we cannot
+   * divine the type of the contents.
    */
   public TypeMirror getCollectionParameterizedType(TypeMirror typeMirror) {
+    if (typeMirror instanceof ArrayType) {
+      return ((ArrayType) typeMirror).getComponentType();
+    }
+    switch (getCollectionType(typeMirror)) {
+      case INT_LIST:
+        return mTypes.getPrimitiveType(TypeKind.INT);
+      case LONG_LIST:
+        return mTypes.getPrimitiveType(TypeKind.LONG);
+      case FLOAT_LIST:
+        return mTypes.getPrimitiveType(TypeKind.FLOAT);
+      case DOUBLE_LIST:
+        return mTypes.getPrimitiveType(TypeKind.DOUBLE);
+      default:
+        break;
+    }
     if (!(typeMirror instanceof DeclaredType)) {
       return null;
     }
@@ -146,10 +197,11 @@ public class TypeUtils {
     List<? extends TypeParameterElement> typeParameterElements = typeElement.getTypeParameters();
 
     if (JAVA_UTIL_QUEUE.equals(getCanonicalTypeName(declaredType)) ||
-        JAVA_UTIL_LIST.equals(getCanonicalTypeName(declaredType))) {
+        JAVA_UTIL_LIST.equals(getCanonicalTypeName(declaredType)) ||
+        LAZY_JSON_OBJECT.equals(getCanonicalTypeName(declaredType))) {
       // sanity check.
       if (typeParameterElements.size() != 1) {
-        throw new IllegalStateException("java list/queue is not expected generic type");
+        throw new IllegalStateException("list/queue/lazy object is not expected generic type");
       }
 
       List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
@@ -159,6 +211,15 @@ public class TypeUtils {
       } else {
         return null;
       }
+    } else if (JAVA_UTIL_MAP.equals(getCanonicalTypeName(declaredType))) {
+      List<? extends TypeMirror> typeArguments = declaredType.getTypeArguments();
+
+      // json keys are always strings.
+      if (typeArguments.size() == 2 && JAVA_LANG_STRING.equals(typeArguments.get(0).toString())) {
+        return typeArguments.get(1);
+      } else {
+        return null;
+      }
     }
 
     return null;
@@ -83,6 +83,18 @@ public class TypeUtilsTest {
     assertEquals(object.integerList__ParseType, TypeUtils.ParseType.INTEGER_OBJECT.toString());
     assertNull(object.integerList__ParseTypeGeneratedClass);
 
+    assertTrue(object.primitiveIntegerArray__IsList);
+    assertEquals(object.primitiveIntegerArray__ParseType, TypeUtils.ParseType.INTEGER.toString());
+    assertNull(object.primitiveIntegerArray__ParseTypeGeneratedClass);
+
+    assertTrue(object.integerMap__IsList);
+    assertEquals(object.integerMap__ParseType, TypeUtils.ParseType.INTEGER_OBJECT.toString());
+    assertNull(object.integerMap__ParseTypeGeneratedClass);
+
+    assertTrue(object.integerKeyedMap__IsList);
+    assertEquals(object.integerKeyedMap__ParseType, TypeUtils.ParseType.UNSUPPORTED.toString());
+    assertNull(object.integerKeyedMap__ParseTypeGeneratedClass);
+
     assertFalse(object.integerInheritedList__IsList);
     assertEquals(object.integerInheritedList__ParseType,
         TypeUtils.ParseType.UNSUPPORTED.toString());
@@ -3,6 +3,7 @@
 package com.instagram.common.json.annotation.util;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 
 /**
@@ -120,6 +121,27 @@ class TypeInspectionUUT {
   String integerQueue__ParseType;
   String integerQueue__ParseTypeGeneratedClass;
 
+  @TypeTesting
+  int[] primitiveIntegerArray;
+
+  boolean primitiveIntegerArray__IsList;
+  String primitiveIntegerArray__ParseType;
+  String primitiveIntegerArray__ParseTypeGeneratedClass;
+
+  @TypeTesting
+  Map<String, Integer> integerMap;
+
+  boolean integerMap__IsList;
+  String integerMap__ParseType;
+  String integerMap__ParseTypeGeneratedClass;
+
+  @TypeTesting
+  Map<Integer, Integer> integerKeyedMap;
+
+  boolean integerKeyedMap__IsList;
+  String integerKeyedMap__ParseType;
+  String integerKeyedMap__ParseTypeGeneratedClass;
+
   @TypeTesting
   InheritedExtendsSpecifiesType integerInheritedList;
 